@@ -16,16 +16,21 @@ package com.norconex.commons.lang.file;
 
 import io.github.pixee.security.BoundedLineReader;
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collection;
@@ -44,7 +49,6 @@ import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.time.DateFormatUtils;
 
 import com.norconex.commons.lang.Sleeper;
-import com.norconex.commons.lang.io.ReverseFileInputStream;
 import com.norconex.commons.lang.text.StringUtil;
 
 import lombok.NonNull;
@@ -61,6 +65,11 @@ public final class FileUtil {
     /** @since 3.0.0 */
     public static final File[] EMPTY_FILE_ARRAY = {};
 
+    // Tail reads files mapped in windows of this size, from the end.
+    private static final int TAIL_MAP_SIZE = 8 * 1024 * 1024;
+    private static final int TAIL_MAX_LINE_LENGTH = 5_000_000;
+    private static final byte[] CRLF_BYTES = { '\r', '\n' };
+
     private FileUtil() {}
 
 
@@ -738,6 +747,10 @@ public final class FileUtil {
     /**
      * Returns the specified number of lines starting from the end
      * of a text file.
+     * For encodings where line terminators are single bytes (e.g., UTF-8
+     * and single-byte encodings), the file is memory-mapped and scanned
+     * backwards for line terminators, and only the lines returned
+     * are decoded.
      * @param file the file to read lines from
      * @param encoding the file encoding
      * @param numberOfLinesToRead the number of lines to read
@@ -752,22 +765,103 @@ public final class FileUtil {
             throws IOException {
         assertFile(file);
         assertNumOfLinesToRead(numberOfLinesToRead);
+        var charset = Charset.forName(encoding);
+        if (!Arrays.equals("\r\n".getBytes(charset), CRLF_BYTES)) {
+            return tailForward(file, charset,
+                    numberOfLinesToRead, stripBlankLines, filter);
+        }
         var lines = new LinkedList<String>();
-        try (var reader = new BufferedReader(new InputStreamReader(
-                new ReverseFileInputStream(file), encoding))) {
-            var remainingLinesToRead = numberOfLinesToRead;
+        try (var channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.READ)) {
+            var size = channel.size();
+            // exclusive end of the line being scanned
+            var lineEnd = size;
+            // whether a LF was just found, which could be part of a CRLF
+            var afterLf = false;
+            var windowEnd = size;
+            while (windowEnd > 0) {
+                var windowStart = Math.max(0, windowEnd - TAIL_MAP_SIZE);
+                var window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        windowStart, windowEnd - windowStart);
+                for (var i = window.limit() - 1; i >= 0; i--) {
+                    var b = window.get(i);
+                    var pos = windowStart + i;
+                    if (b == '\r' && afterLf) {
+                        lineEnd = pos;
+                    } else if (b == '\n' || b == '\r') {
+                        addTailLine(lines, readTailLine(channel, window,
+                                windowStart, pos + 1, lineEnd, charset),
+                                stripBlankLines, filter);
+                        if (lines.size() == numberOfLinesToRead) {
+                            return lines.toArray(
+                                    ArrayUtils.EMPTY_STRING_ARRAY);
+                        }
+                        lineEnd = pos;
+                    } else if (lineEnd - pos > TAIL_MAX_LINE_LENGTH) {
+                        throw new SecurityException(
+                                "read more than maximum characters allowed ("
+                                + TAIL_MAX_LINE_LENGTH + ")");
+                    }
+                    afterLf = b == '\n';
+                }
+                windowEnd = windowStart;
+            }
+            // a terminator at the beginning of file does not start a line
+            if (lineEnd > 0 && lines.size() < numberOfLinesToRead) {
+                addTailLine(lines, readTailLine(channel, null,
+                        0, 0, lineEnd, charset), stripBlankLines, filter);
+            }
+        }
+        return lines.toArray(ArrayUtils.EMPTY_STRING_ARRAY);
+    }
 
-            String line;
-            while ((line = BoundedLineReader.readLine(reader, 5_000_000)) != null) {
-                if (remainingLinesToRead-- <= 0) {
-                    break;
+    // Decodes the line found between the given positions, from the
+    // mapped window if it holds the entire line.
+    private static String readTailLine(FileChannel channel,
+            ByteBuffer window, long windowStart, long start, long end,
+            Charset charset) throws IOException {
+        var bytes = new byte[(int) (end - start)];
+        if (window != null && end - windowStart <= window.limit()) {
+            window.get((int) (start - windowStart), bytes);
+        } else {
+            var bb = ByteBuffer.wrap(bytes);
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, start + bb.position()) == -1) {
+                    throw new EOFException(
+                            "File was truncated while reading.");
                 }
-                var newLine = StringUtils.reverse(line);
+            }
+        }
+        return new String(bytes, charset);
+    }
+
+    // Adds a line first, if accepted.
+    private static void addTailLine(LinkedList<String> lines, String line,
+            boolean stripBlankLines, Predicate<String> filter) {
+        if ((!stripBlankLines || StringUtils.isNotBlank(line))
+                && (filter == null || filter.test(line))) {
+            lines.addFirst(line);
+        }
+    }
+
+    // Line terminators are not single bytes with encodings such as UTF-16,
+    // so the file is read from the beginning, keeping the last lines.
+    private static String[] tailForward(File file, Charset charset,
+            final int numberOfLinesToRead, boolean stripBlankLines,
+            Predicate<String> filter)
+            throws IOException {
+        var lines = new LinkedList<String>();
+        try (var reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), charset))) {
+            String line;
+            while ((line = BoundedLineReader.readLine(
+                    reader, TAIL_MAX_LINE_LENGTH)) != null) {
                 if ((!stripBlankLines || StringUtils.isNotBlank(line))
-                        && (filter == null || filter.test(newLine))) {
-                    lines.addFirst(newLine);
-                } else {
-                    remainingLinesToRead++;
+                        && (filter == null || filter.test(line))) {
+                    lines.add(line);
+                    if (lines.size() > numberOfLinesToRead) {
+                        lines.removeFirst();
+                    }
                 }
             }
         }
@@ -1,4 +1,4 @@
-/* Copyright 2015-2022 Norconex Inc.
+/* Copyright 2015-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,8 +20,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -47,14 +52,47 @@ import lombok.NonNull;
  * <p>The higher the initial capacity, the faster it should be to write
  * large streams, but the more initial memory it will take.</p>
  *
+ * <p>As of 3.0.0, byte arrays can be obtained from a {@link ByteArrayPool}
+ * shared by many instances. They are returned to the pool when this
+ * stream is {@link #reset()} or {@link #dispose() disposed}.</p>
+ *
+ * <p>As of 3.0.0, an instance can be created in "single-writer" mode,
+ * where writing methods do not acquire a lock. Only use it when a single
+ * thread writes to the stream at any given time. Other threads can still
+ * safely read what was written so far.</p>
+ *
  * @since 2.1.0
  */
 public class ByteArrayOutputStream extends OutputStream {
 
     public static final int DEFAULT_INITIAL_CAPACITY = 1024;
 
-    /** The list of buffers, which grows and never reduces. */
-    private final List<byte[]> buffers = new ArrayList<>();
+    // maximum number of buffers per gathering write
+    private static final int GATHER_BATCH_SIZE = 1024;
+
+    // initial number of slots for buffers
+    private static final int INITIAL_SLOTS = 16;
+
+    // Publishes written bytes to reading threads without locking
+    private static final VarHandle TOTAL_COUNT;
+    static {
+        try {
+            TOTAL_COUNT = MethodHandles.lookup().findVarHandle(
+                    ByteArrayOutputStream.class, "totalCount", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The buffers, in content order. Replaced by a larger copy when full,
+     * so reading threads never see a partially copied array. Slots are
+     * assigned before the byte count that covers them is published.
+     */
+    private volatile byte[][] buffers = new byte[INITIAL_SLOTS][];
+
+    /** The number of buffers in use. Only accessed by writers. */
+    private int bufferCount;
 
     /** The index of the current buffer. */
     private int currentBufferIndex;
@@ -68,6 +106,12 @@ public class ByteArrayOutputStream extends OutputStream {
     /** Each new buffer initialization length. */
     private final int bufferCapacity;
 
+    /** Where buffers are obtained from, if not created. */
+    private final ByteArrayPool pool;
+
+    /** Whether writing methods skip locking. */
+    private final boolean singleWriter;
+
     /**
      * Creates a new byte array output stream. The buffer capacity is
      * initially 1024 bytes.
@@ -84,20 +128,84 @@ public class ByteArrayOutputStream extends OutputStream {
      * @throws IllegalArgumentException if size is negative
      */
     public ByteArrayOutputStream(int size) {
+        this(size, false);
+    }
+
+    /**
+     * Creates a new byte array output stream, with a buffer capacity of
+     * the specified size, in bytes, optionally in single-writer mode.
+     *
+     * @param size  the initial size
+     * @param singleWriter <code>true</code> if only one thread writes
+     *     to this stream at any given time
+     * @throws IllegalArgumentException if size is negative
+     * @since 3.0.0
+     */
+    public ByteArrayOutputStream(int size, boolean singleWriter) {
         if (size < 0) {
             throw new IllegalArgumentException(
                 "Negative initial size: " + size);
         }
         synchronized (this) {
             bufferCapacity = size;
+            pool = null;
+            this.singleWriter = singleWriter;
+            addNewBuffer();
+        }
+    }
+
+    /**
+     * Creates a new byte array output stream, with buffers obtained
+     * from the specified pool. The buffer capacity is the pool array size.
+     *
+     * @param pool the pool to get buffers from
+     * @since 3.0.0
+     */
+    public ByteArrayOutputStream(@NonNull ByteArrayPool pool) {
+        this(pool, false);
+    }
+
+    /**
+     * Creates a new byte array output stream, with buffers obtained
+     * from the specified pool, optionally in single-writer mode.
+     * The buffer capacity is the pool array size.
+     *
+     * @param pool the pool to get buffers from
+     * @param singleWriter <code>true</code> if only one thread writes
+     *     to this stream at any given time
+     * @since 3.0.0
+     */
+    public ByteArrayOutputStream(
+            @NonNull ByteArrayPool pool, boolean singleWriter) {
+        synchronized (this) {
+            bufferCapacity = pool.getArraySize();
+            this.pool = pool;
+            this.singleWriter = singleWriter;
             addNewBuffer();
         }
+    }
 
+    /**
+     * Whether this stream is in single-writer mode, where writing
+     * methods do not acquire a lock.
+     * @return <code>true</code> if in single-writer mode
+     * @since 3.0.0
+     */
+    public boolean isSingleWriter() {
+        return singleWriter;
     }
 
     private void addNewBuffer() {
-        currentBuffer = new byte[bufferCapacity];
-        buffers.add(currentBuffer);
+        currentBuffer = pool != null
+                ? pool.acquire() : new byte[bufferCapacity];
+        var bufs = buffers;
+        if (bufferCount == bufs.length) {
+            bufs = Arrays.copyOf(bufs, bufs.length * 2);
+            bufs[bufferCount++] = currentBuffer;
+            buffers = bufs;
+        } else {
+            bufs[bufferCount++] = currentBuffer;
+        }
         currentBufferIndex = 0;
     }
 
@@ -110,12 +218,12 @@ public class ByteArrayOutputStream extends OutputStream {
      */
     public int getByte(int offset) {
         int pos = Math.max(0, offset);
-        if (pos >= totalCount) {
+        if (pos >= count()) {
             return -1;
         }
         int buffersIndex = pos / bufferCapacity;
         int bufPos = pos % bufferCapacity;
-        return buffers.get(buffersIndex)[bufPos];
+        return buffers[buffersIndex][bufPos];
     }
 
     /**
@@ -137,18 +245,20 @@ public class ByteArrayOutputStream extends OutputStream {
         }
 
         // no need to synchronize since read-only and no cursor?
+        int count = count();
         int thisStartOffset = Math.max(0, offset);
-        if (thisStartOffset >= totalCount) {
+        if (thisStartOffset >= count) {
             return -1;
         }
         int thisLengthToRead =
-                Math.min(target.length, totalCount - thisStartOffset);
+                Math.min(target.length, count - thisStartOffset);
 
+        byte[][] bufs = buffers;
         int sourceBytesLeftToRead = thisLengthToRead;
         int sourceOffset = thisStartOffset;
         int targetOffset = 0;
         while (sourceBytesLeftToRead > 0) {
-            byte[] sliceBuffer = buffers.get(sourceOffset / bufferCapacity);
+            byte[] sliceBuffer = bufs[sourceOffset / bufferCapacity];
             int sliceOffset = sourceOffset % bufferCapacity;
             int lengthToRead;
             if (sourceBytesLeftToRead > bufferCapacity - sliceOffset) {
@@ -165,6 +275,16 @@ public class ByteArrayOutputStream extends OutputStream {
         return thisLengthToRead;
     }
 
+    // Internal buffers all have the same capacity, so the buffer holding
+    // a given offset is at index "offset / capacity". Only safe to read
+    // up to the current size.
+    /*default*/ int getBufferCapacity() {
+        return bufferCapacity;
+    }
+    /*default*/ byte[] getBuffer(int index) {
+        return buffers[index];
+    }
+
     /**
      * Write the bytes to byte array.
      * @param b the bytes to write
@@ -183,23 +303,34 @@ public class ByteArrayOutputStream extends OutputStream {
         if (len == 0) {
             return;
         }
-        synchronized (this) {
-            int bytesLeftToWrite = len;
-            int lastOff = off;
-            while (bytesLeftToWrite > 0) {
-                int currentRoomLeft = bufferCapacity - currentBufferIndex;
-                int lengthToWrite = Math.min(bytesLeftToWrite, currentRoomLeft);
-                System.arraycopy(b, lastOff, currentBuffer,
-                        currentBufferIndex, lengthToWrite);
-                currentBufferIndex += lengthToWrite;
-                lastOff += lengthToWrite;
-                bytesLeftToWrite -= lengthToWrite;
-                if (currentBufferIndex == bufferCapacity) {
-                    addNewBuffer();
-                }
-                totalCount += lengthToWrite;
+        if (singleWriter) {
+            writeBytes(b, off, len);
+        } else {
+            synchronized (this) {
+                writeBytes(b, off, len);
+            }
+        }
+    }
+
+    private void writeBytes(byte[] b, int off, int len) {
+        if (currentBuffer == null) {
+            addNewBuffer();
+        }
+        int bytesLeftToWrite = len;
+        int lastOff = off;
+        while (bytesLeftToWrite > 0) {
+            int currentRoomLeft = bufferCapacity - currentBufferIndex;
+            int lengthToWrite = Math.min(bytesLeftToWrite, currentRoomLeft);
+            System.arraycopy(b, lastOff, currentBuffer,
+                    currentBufferIndex, lengthToWrite);
+            currentBufferIndex += lengthToWrite;
+            lastOff += lengthToWrite;
+            bytesLeftToWrite -= lengthToWrite;
+            if (currentBufferIndex == bufferCapacity) {
+                addNewBuffer();
             }
         }
+        setCount(totalCount + len);
     }
 
     /**
@@ -207,13 +338,26 @@ public class ByteArrayOutputStream extends OutputStream {
      * @param b the byte to write
      */
     @Override
-    public synchronized void write(int b) {
+    public void write(int b) {
+        if (singleWriter) {
+            writeByte(b);
+        } else {
+            synchronized (this) {
+                writeByte(b);
+            }
+        }
+    }
+
+    private void writeByte(int b) {
+        if (currentBuffer == null) {
+            addNewBuffer();
+        }
         currentBuffer[currentBufferIndex] = (byte) b;
-        totalCount++;
         currentBufferIndex++;
         if (currentBufferIndex == bufferCapacity) {
             addNewBuffer();
         }
+        setCount(totalCount + 1);
     }
 
     /**
@@ -241,8 +385,18 @@ public class ByteArrayOutputStream extends OutputStream {
      * Return the current size of the byte array.
      * @return the current size of the byte array
      */
-    public synchronized int size() {
-        return totalCount;
+    public int size() {
+        return count();
+    }
+
+    // Only the writing thread may read totalCount directly. Others must
+    // use this method to see all bytes written up to the returned count.
+    private int count() {
+        return (int) TOTAL_COUNT.getAcquire(this);
+    }
+
+    private void setCount(int count) {
+        TOTAL_COUNT.setRelease(this, count);
     }
 
     /**
@@ -262,11 +416,35 @@ public class ByteArrayOutputStream extends OutputStream {
      * @see java.io.ByteArrayOutputStream#reset()
      */
     public synchronized void reset() {
-        totalCount = 0;
-        buffers.clear();
+        releaseBuffers();
         addNewBuffer();
     }
 
+    /**
+     * Empties this stream and returns its buffers to the pool it was
+     * created with, if any. Unlike {@link #reset()}, no buffer is
+     * kept. This stream can still be written to after, obtaining new
+     * buffers as needed.
+     * @since 3.0.0
+     */
+    public synchronized void dispose() {
+        releaseBuffers();
+        currentBuffer = null;
+    }
+
+    private void releaseBuffers() {
+        var bufs = buffers;
+        if (pool != null) {
+            for (var i = 0; i < bufferCount; i++) {
+                pool.release(bufs[i]);
+            }
+        }
+        setCount(0);
+        currentBufferIndex = 0;
+        Arrays.fill(bufs, 0, bufferCount, null);
+        bufferCount = 0;
+    }
+
     /**
      * Writes the entire contents of this byte stream to the
      * specified output stream.
@@ -277,15 +455,70 @@ public class ByteArrayOutputStream extends OutputStream {
      * @see java.io.ByteArrayOutputStream#writeTo(OutputStream)
      */
     public synchronized void writeTo(OutputStream out) throws IOException {
-        int remaining = totalCount;
-        for (byte[] buf : buffers) {
-            int c = Math.min(buf.length, remaining);
-            out.write(buf, 0, c);
+        int remaining = count();
+        byte[][] bufs = buffers;
+        for (var i = 0; remaining > 0; i++) {
+            int c = Math.min(bufs[i].length, remaining);
+            out.write(bufs[i], 0, c);
             remaining -= c;
-            if (remaining == 0) {
-                break;
+        }
+    }
+
+    /**
+     * Writes the entire contents of this byte stream to the
+     * specified channel, with gathering writes over the internal buffers
+     * of this stream (i.e., without first copying them into a single
+     * byte array).
+     *
+     * @param channel  the channel to write to
+     * @return number of bytes written
+     * @throws IOException if an I/O error occurs
+     * @since 3.0.0
+     */
+    public synchronized long writeTo(GatheringByteChannel channel)
+            throws IOException {
+        var count = count();
+        var remaining = count;
+        var bufs = buffers;
+        var bufIndex = 0;
+        while (remaining > 0) {
+            // wrapped a batch at a time to keep wrappers few
+            var batch = new ByteBuffer[Math.min(GATHER_BATCH_SIZE,
+                    remaining / bufferCapacity
+                            + (remaining % bufferCapacity == 0 ? 0 : 1))];
+            var batchCount = 0L;
+            for (var i = 0; i < batch.length; i++) {
+                var buf = bufs[bufIndex++];
+                var c = Math.min(buf.length, remaining);
+                batch[i] = ByteBuffer.wrap(buf, 0, c);
+                batchCount += c;
+                remaining -= c;
+            }
+            while (batchCount > 0) {
+                batchCount -= channel.write(batch);
             }
         }
+        return count;
+    }
+
+    /**
+     * Gets the current contents of this byte stream as read-only views
+     * of its internal buffers, without copying them. The views are
+     * only valid until this stream is reset or disposed.
+     *
+     * @return read-only byte buffers, in content order
+     * @since 3.0.0
+     */
+    public synchronized ByteBuffer[] toByteBuffers() {
+        List<ByteBuffer> list = new ArrayList<>();
+        int remaining = count();
+        byte[][] bufs = buffers;
+        for (var i = 0; remaining > 0; i++) {
+            int c = Math.min(bufs[i].length, remaining);
+            list.add(ByteBuffer.wrap(bufs[i], 0, c).asReadOnlyBuffer());
+            remaining -= c;
+        }
+        return list.toArray(new ByteBuffer[0]);
     }
 
     /**
@@ -335,18 +568,16 @@ public class ByteArrayOutputStream extends OutputStream {
      * @see #reset()
      */
     private InputStream toBufferedInputStream() {
-        int remaining = totalCount;
+        int remaining = count();
         if (remaining == 0) {
             return new ClosedInputStream();
         }
-        List<ByteArrayInputStream> list = new ArrayList<>(buffers.size());
-        for (byte[] buf : buffers) {
-            int c = Math.min(buf.length, remaining);
-            list.add(new ByteArrayInputStream(buf, 0, c));
+        List<ByteArrayInputStream> list = new ArrayList<>();
+        byte[][] bufs = buffers;
+        for (var i = 0; remaining > 0; i++) {
+            int c = Math.min(bufs[i].length, remaining);
+            list.add(new ByteArrayInputStream(bufs[i], 0, c));
             remaining -= c;
-            if (remaining == 0) {
-                break;
-            }
         }
         return new SequenceInputStream(Collections.enumeration(list));
     }
@@ -359,20 +590,18 @@ public class ByteArrayOutputStream extends OutputStream {
      * @see java.io.ByteArrayOutputStream#toByteArray()
      */
     public synchronized byte[] toByteArray() {
-        int remaining = totalCount;
+        int remaining = count();
         if (remaining == 0) {
             return ArrayUtils.EMPTY_BYTE_ARRAY;
         }
         byte[] newbuf = new byte[remaining];
+        byte[][] bufs = buffers;
         int pos = 0;
-        for (byte[] buf : buffers) {
-            int c = Math.min(buf.length, remaining);
-            System.arraycopy(buf, 0, newbuf, pos, c);
+        for (var i = 0; remaining > 0; i++) {
+            int c = Math.min(bufs[i].length, remaining);
+            System.arraycopy(bufs[i], 0, newbuf, pos, c);
             pos += c;
             remaining -= c;
-            if (remaining == 0) {
-                break;
-            }
         }
         return newbuf;
     }
@@ -0,0 +1,115 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * A thread-safe pool of byte arrays of identical length, to be shared
+ * by {@link ByteArrayOutputStream} instances so that creating and discarding
+ * many of them does not allocate new arrays each time.
+ * </p>
+ * <p>
+ * Arrays are created as needed when the pool is empty. Released arrays
+ * are kept for reuse up to the maximum number of pooled arrays, after which
+ * they are left to be garbage collected. Reused arrays are not cleared.
+ * </p>
+ * @since 3.0.0
+ * @see ByteArrayOutputStream#ByteArrayOutputStream(ByteArrayPool)
+ * @see CachedStreamFactory#setBufferPool(ByteArrayPool)
+ */
+public class ByteArrayPool {
+
+    private final int arraySize;
+    private final int maxPooled;
+    private final BlockingQueue<byte[]> arrays;
+
+    /**
+     * Creates a new pool.
+     * @param arraySize length of arrays in this pool
+     * @param maxPooled maximum number of released arrays kept for reuse
+     * @throws IllegalArgumentException if array size is lower than one or
+     *     maximum pooled arrays is negative
+     */
+    public ByteArrayPool(int arraySize, int maxPooled) {
+        if (arraySize < 1) {
+            throw new IllegalArgumentException(
+                    "Array size must be greater than zero: " + arraySize);
+        }
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum pooled arrays must not be negative: "
+                            + maxPooled);
+        }
+        this.arraySize = arraySize;
+        this.maxPooled = maxPooled;
+        arrays = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    /**
+     * Gets the length of arrays in this pool.
+     * @return array length
+     */
+    public int getArraySize() {
+        return arraySize;
+    }
+
+    /**
+     * Gets the maximum number of released arrays kept for reuse.
+     * @return maximum pooled arrays
+     */
+    public int getMaxPooled() {
+        return maxPooled;
+    }
+
+    /**
+     * Gets the number of released arrays currently available for reuse.
+     * @return pooled arrays
+     */
+    public int getPooledCount() {
+        return arrays.size();
+    }
+
+    /**
+     * Gets an array from this pool, or a new one if the pool is empty.
+     * A reused array may hold content from its previous use.
+     * @return byte array
+     */
+    public byte[] acquire() {
+        var array = arrays.poll();
+        return array != null ? array : new byte[arraySize];
+    }
+
+    /**
+     * Returns an array to this pool. The array must no longer be used
+     * by the caller.
+     * @param array byte array obtained from this pool
+     * @throws IllegalArgumentException if the array length does not match
+     *     this pool array size
+     */
+    public void release(byte[] array) {
+        if (array.length != arraySize) {
+            throw new IllegalArgumentException(
+                    "Array length " + array.length
+                            + " does not match pool array size "
+                            + arraySize + ".");
+        }
+        if (maxPooled > 0) {
+            arrays.offer(array);
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * File holding cached stream content too large to be kept in memory.
+ * Content is appended through a write buffer and can be read at any
+ * position through a read buffer, so reading or writing one byte at a
+ * time does not result in one system call per byte. Content not yet
+ * written to disk can be read as well.
+ * </p>
+ * <p>
+ * When compressed, the write buffer is written as a block compressed
+ * on its own, preceded by its uncompressed and stored lengths (blocks
+ * that do not compress are stored as is, and so are the next few ones
+ * without trying). Reading at a given position only decompresses the
+ * block holding it. The block index is kept in memory, and rebuilt from
+ * block headers when opening a file.
+ * </p>
+ * <p>
+ * Buffers are allocated on first use. Not thread-safe.
+ * </p>
+ * @since 3.0.0
+ */
+final class CacheFile implements Closeable {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    // blocks stored without trying to compress them after one did not
+    private static final int INCOMPRESSIBLE_SKIP = 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean compressed;
+    // number of (uncompressed) bytes written to the channel
+    private long size;
+
+    private ByteBuffer writeBuffer;
+    private ByteBuffer readBuffer;
+    // (uncompressed) position of read buffer first byte
+    private long readBufferStart;
+
+    // compressed only: channel size, block index, and codec
+    private long channelSize;
+    private long[] blockStarts = new long[0];
+    private long[] blockOffsets = new long[0];
+    private int blockCount;
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] blockBytes;
+    private int blocksToSkip;
+
+    private CacheFile(Path path, FileChannel channel, boolean compressed) {
+        this.path = path;
+        this.channel = channel;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Creates a new, empty, cache file that can be written to and read.
+     * @param path file path
+     * @return cache file
+     * @throws IOException could not create file
+     */
+    static CacheFile create(Path path) throws IOException {
+        return create(path, false);
+    }
+    /**
+     * Creates a new, empty, cache file that can be written to and read,
+     * optionally compressed.
+     * @param path file path
+     * @param compressed whether to compress content
+     * @return cache file
+     * @throws IOException could not create file
+     */
+    static CacheFile create(Path path, boolean compressed) throws IOException {
+        return new CacheFile(path, FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE), compressed);
+    }
+
+    /**
+     * Opens an existing cache file for reading.
+     * @param path file path
+     * @return cache file
+     * @throws IOException could not open file
+     */
+    static CacheFile open(Path path) throws IOException {
+        return open(path, false);
+    }
+    /**
+     * Opens an existing cache file for reading.
+     * @param path file path
+     * @param compressed whether the file was created compressed
+     * @return cache file
+     * @throws IOException could not open file
+     */
+    static CacheFile open(Path path, boolean compressed) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        var file = new CacheFile(path, channel, compressed);
+        try {
+            if (compressed) {
+                file.readBlockIndex();
+            } else {
+                file.size = channel.size();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return file;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Gets the number of bytes in this file, including those not yet
+     * written to disk. When compressed, this is the uncompressed length.
+     * @return file length
+     */
+    long length() {
+        return size + (writeBuffer == null ? 0 : writeBuffer.position());
+    }
+
+    void write(int b) throws IOException {
+        ensureWriteBuffer();
+        if (!writeBuffer.hasRemaining()) {
+            flush();
+        }
+        writeBuffer.put((byte) b);
+    }
+
+    void write(byte[] b, int off, int len) throws IOException {
+        ensureWriteBuffer();
+        if (!compressed) {
+            if (len > writeBuffer.remaining()) {
+                flush();
+            }
+            if (len >= BLOCK_SIZE) {
+                writeFully(ByteBuffer.wrap(b, off, len));
+            } else {
+                writeBuffer.put(b, off, len);
+            }
+            return;
+        }
+        // compressed blocks are always written from the write buffer
+        var written = 0;
+        while (written < len) {
+            if (!writeBuffer.hasRemaining()) {
+                flush();
+            }
+            var num = Math.min(len - written, writeBuffer.remaining());
+            writeBuffer.put(b, off + written, num);
+            written += num;
+        }
+    }
+
+    /**
+     * Writes the content of a memory cache, without copying it first
+     * unless compressed.
+     * @param out memory cache
+     * @throws IOException could not write to disk
+     */
+    void write(ByteArrayOutputStream out) throws IOException {
+        if (compressed) {
+            for (ByteBuffer buf : out.toByteBuffers()) {
+                ensureWriteBuffer();
+                while (buf.hasRemaining()) {
+                    if (!writeBuffer.hasRemaining()) {
+                        flush();
+                    }
+                    var num = Math.min(
+                            buf.remaining(), writeBuffer.remaining());
+                    writeBuffer.put(buf.slice(buf.position(), num));
+                    buf.position(buf.position() + num);
+                }
+            }
+            return;
+        }
+        flush();
+        channel.position(size);
+        size += out.writeTo(channel);
+    }
+
+    /**
+     * Writes buffered content to disk. When compressed, buffered content
+     * is written as a new block, so flushing often reduces compression.
+     * @throws IOException could not write to disk
+     */
+    void flush() throws IOException {
+        if (writeBuffer != null && writeBuffer.position() > 0) {
+            writeBuffer.flip();
+            if (compressed) {
+                writeBlock(writeBuffer);
+            } else {
+                writeFully(writeBuffer);
+            }
+            writeBuffer.clear();
+        }
+    }
+
+    /**
+     * Reads the byte at the given position.
+     * @param position file position
+     * @return byte value, from 0 to 255, or -1 if past the end of file
+     * @throws IOException could not read file
+     */
+    int read(long position) throws IOException {
+        if (position >= size) {
+            if (position >= length()) {
+                return -1;
+            }
+            return writeBuffer.get((int) (position - size)) & 0xFF;
+        }
+        if (!isInReadBuffer(position)) {
+            fillReadBuffer(position);
+        }
+        return readBuffer.get((int) (position - readBufferStart)) & 0xFF;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes from the given position.
+     * @param position file position
+     * @param b target array
+     * @param off target array offset
+     * @param len maximum number of bytes to read
+     * @return number of bytes read, or -1 if past the end of file
+     * @throws IOException could not read file
+     */
+    int read(long position, byte[] b, int off, int len) throws IOException {
+        if (position >= length()) {
+            return len == 0 ? 0 : -1;
+        }
+        var total = 0;
+        var pos = position;
+        while (total < len && pos < length()) {
+            int num;
+            if (pos >= size) {
+                num = (int) Math.min(len - total, length() - pos);
+                writeBuffer.get((int) (pos - size), b, off + total, num);
+            } else if (isInReadBuffer(pos)) {
+                num = (int) Math.min(len - total,
+                        readBufferStart + readBuffer.limit() - pos);
+                readBuffer.get((int) (pos - readBufferStart),
+                        b, off + total, num);
+            } else if (!compressed && len - total >= BLOCK_SIZE) {
+                // large reads bypass the read buffer
+                num = channel.read(ByteBuffer.wrap(
+                        b, off + total, (int) Math.min(
+                                len - total, size - pos)), pos);
+                if (num == -1) {
+                    break;
+                }
+            } else {
+                fillReadBuffer(pos);
+                continue;
+            }
+            total += num;
+            pos += num;
+        }
+        return total;
+    }
+
+    /**
+     * Writes up to <code>count</code> bytes from the given position to a
+     * channel. Uncompressed content already on disk is handed to the file
+     * channel, which may transfer it without copying it through the heap.
+     * @param position file position
+     * @param count maximum number of bytes to write
+     * @param target channel to write to
+     * @return number of bytes written
+     * @throws IOException could not read file or write to channel
+     */
+    long transferTo(long position, long count, WritableByteChannel target)
+            throws IOException {
+        var end = Math.min(length(), position + count);
+        var pos = position;
+        if (!compressed) {
+            var onDisk = Math.min(end, size);
+            while (pos < onDisk) {
+                pos += channel.transferTo(pos, onDisk - pos, target);
+            }
+        }
+        if (pos < end) {
+            var buf = new byte[(int) Math.min(BLOCK_SIZE, end - pos)];
+            while (pos < end) {
+                var num = read(pos, buf, 0,
+                        (int) Math.min(buf.length, end - pos));
+                var bb = ByteBuffer.wrap(buf, 0, num);
+                while (bb.hasRemaining()) {
+                    target.write(bb);
+                }
+                pos += num;
+            }
+        }
+        return pos - position;
+    }
+
+    /**
+     * Gets a new input stream reading this file from the beginning.
+     * Closing the stream does not close this file.
+     * @return input stream
+     */
+    InputStream newInputStream() {
+        return new InputStream() {
+            private long pos;
+            @Override
+            public int read() throws IOException {
+                var b = CacheFile.this.read(pos);
+                if (b != -1) {
+                    pos++;
+                }
+                return b;
+            }
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                var num = CacheFile.this.read(pos, b, off, len);
+                if (num > 0) {
+                    pos += num;
+                }
+                return num;
+            }
+            @Override
+            public long skip(long n) {
+                var num = Math.max(0, Math.min(n, length() - pos));
+                pos += num;
+                return num;
+            }
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, length() - pos);
+            }
+        };
+    }
+
+    /**
+     * Gets a new output stream appending to this file. Flushing the stream
+     * has no effect (content is written as the write buffer fills up, and
+     * when closed). Closing the stream closes this file.
+     * @return output stream
+     */
+    OutputStream newOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                CacheFile.this.write(b);
+            }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                CacheFile.this.write(b, off, len);
+            }
+            @Override
+            public void close() throws IOException {
+                CacheFile.this.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+            writeBuffer = null;
+            readBuffer = null;
+            blockBytes = null;
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private boolean isInReadBuffer(long position) {
+        return readBuffer != null
+                && position >= readBufferStart
+                && position < readBufferStart + readBuffer.limit();
+    }
+
+    private void fillReadBuffer(long position) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(BLOCK_SIZE);
+        }
+        if (compressed) {
+            readBlock(position);
+            return;
+        }
+        readBuffer.clear();
+        readBuffer.limit((int) Math.min(BLOCK_SIZE, size - position));
+        while (readBuffer.hasRemaining()) {
+            if (channel.read(readBuffer, position + readBuffer.position())
+                    == -1) {
+                break;
+            }
+        }
+        readBuffer.flip();
+        readBufferStart = position;
+    }
+
+    private void ensureWriteBuffer() {
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocate(BLOCK_SIZE);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            size += channel.write(buffer, size);
+        }
+    }
+
+    //--- Compressed blocks ----------------------------------------------------
+
+    private void writeBlock(ByteBuffer raw) throws IOException {
+        if (blockBytes == null) {
+            blockBytes = new byte[BLOCK_SIZE];
+        }
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        var rawLength = raw.remaining();
+        var storedLength = rawLength;
+        var data = raw;
+        if (blocksToSkip > 0) {
+            blocksToSkip--;
+        } else {
+            deflater.reset();
+            deflater.setInput(raw.array(), raw.position(), rawLength);
+            deflater.finish();
+            var length = deflater.deflate(blockBytes, 0, rawLength);
+            // stored as is if it does not get smaller
+            if (deflater.finished() && length < rawLength) {
+                storedLength = length;
+                data = ByteBuffer.wrap(blockBytes, 0, length);
+            } else {
+                blocksToSkip = INCOMPRESSIBLE_SKIP;
+            }
+        }
+        var header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(rawLength)
+                .putInt(storedLength)
+                .flip();
+        addBlock(size, channelSize);
+        channelSize += writeFully(header, channelSize);
+        channelSize += writeFully(data, channelSize);
+        size += rawLength;
+    }
+
+    private void readBlock(long position) throws IOException {
+        var idx = Arrays.binarySearch(blockStarts, 0, blockCount, position);
+        if (idx < 0) {
+            idx = -idx - 2;
+        }
+        var blockOffset = blockOffsets[idx];
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, blockOffset);
+        var rawLength = header.getInt(0);
+        var storedLength = header.getInt(Integer.BYTES);
+        readBuffer.clear().limit(rawLength);
+        if (storedLength == rawLength) {
+            readFully(readBuffer, blockOffset + HEADER_SIZE);
+        } else {
+            if (blockBytes == null) {
+                blockBytes = new byte[BLOCK_SIZE];
+            }
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            readFully(ByteBuffer.wrap(blockBytes, 0, storedLength),
+                    blockOffset + HEADER_SIZE);
+            inflater.reset();
+            inflater.setInput(blockBytes, 0, storedLength);
+            try {
+                if (inflater.inflate(readBuffer.array(), 0, rawLength)
+                        != rawLength) {
+                    throw new IOException("Corrupted cache file block at "
+                            + blockOffset + ": " + path);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted cache file block at "
+                        + blockOffset + ": " + path, e);
+            }
+        }
+        readBuffer.position(0).limit(rawLength);
+        readBufferStart = blockStarts[idx];
+    }
+
+    private void readBlockIndex() throws IOException {
+        channelSize = channel.size();
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        var offset = 0L;
+        while (offset < channelSize) {
+            header.clear();
+            readFully(header, offset);
+            addBlock(size, offset);
+            size += header.getInt(0);
+            offset += HEADER_SIZE + (long) header.getInt(Integer.BYTES);
+        }
+    }
+
+    private void addBlock(long start, long offset) {
+        if (blockCount == blockStarts.length) {
+            var newLength = Math.max(16, blockCount * 2);
+            blockStarts = Arrays.copyOf(blockStarts, newLength);
+            blockOffsets = Arrays.copyOf(blockOffsets, newLength);
+        }
+        blockStarts[blockCount] = start;
+        blockOffsets[blockCount] = offset;
+        blockCount++;
+    }
+
+    private int writeFully(ByteBuffer buffer, long position)
+            throws IOException {
+        var total = 0;
+        while (buffer.hasRemaining()) {
+            total += channel.write(buffer, position + total);
+        }
+        return total;
+    }
+
+    private void readFully(ByteBuffer buffer, long position)
+            throws IOException {
+        var start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start)
+                    == -1) {
+                throw new IOException(
+                        "Unexpected end of cache file: " + path);
+            }
+        }
+    }
+}
@@ -1,4 +1,4 @@
-/* Copyright 2014-2022 Norconex Inc.
+/* Copyright 2014-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,13 +17,17 @@ package com.norconex.commons.lang.io;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
-import java.nio.channels.Channels;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.apache.commons.io.FileUtils;
@@ -33,7 +37,6 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.commons.lang.io.CachedStreamFactory.MemoryTracker;
 
 /**
@@ -89,9 +92,16 @@ public class CachedInputStream extends InputStream implements CachedStream {
 
     private byte[] memCache;
     private ByteArrayOutputStream memOutputStream;
+    // memory cache buffer last read from, and its position
+    private byte[] memSegment;
+    private long memSegmentStart;
 
     private Path fileCache;
-    private RandomAccessFile randomAccessFile;
+    private CacheFile cacheFile;
+    private final boolean compressFileCache;
+    // only set when deduplicating file caches
+    private MessageDigest digest;
+    private String sharedFileKey;
 
     private boolean firstRead = true;
     private boolean needNewStream = false;
@@ -100,12 +110,12 @@ public class CachedInputStream extends InputStream implements CachedStream {
 
     private final Path cacheDirectory;
 
-    private int count;        // total number of bytes read so far
-    private int pos = 0;      // byte position we are in
-    private int markpos = -1; // position we want to go back to
+    private long count;        // total number of bytes read so far
+    private long pos = 0;      // byte position we are in
+    private long markpos = -1; // position we want to go back to
 
     // undefined until a full read was performed
-    private int length = UNDEFINED_LENGTH;
+    private long length = UNDEFINED_LENGTH;
 
     /**
      * Caches the wrapped InputStream.
@@ -116,9 +126,13 @@ public class CachedInputStream extends InputStream implements CachedStream {
     CachedInputStream(
             CachedStreamFactory factory, Path cacheDirectory, InputStream is) {
         this.factory = factory;
-        tracker = factory.new MemoryTracker();
+        tracker = factory.newMemoryTracker(this);
 
-        memOutputStream = new ByteArrayOutputStream();
+        memOutputStream = factory.newMemoryCache();
+        compressFileCache = factory.isCompressFileCache();
+        if (factory.isDeduplicateFileCache()) {
+            digest = newDigest();
+        }
 
         if (is instanceof BufferedInputStream) {
             inputStream = is;
@@ -137,13 +151,15 @@ public class CachedInputStream extends InputStream implements CachedStream {
     CachedInputStream(
             CachedStreamFactory factory, Path cacheDirectory, byte[] memCache) {
         this.factory = factory;
-        tracker = factory.new MemoryTracker();
+        tracker = factory.newMemoryTracker(this);
         this.memCache = ArrayUtils.clone(memCache);
         this.cacheDirectory = nullSafeCacheDirectory(cacheDirectory);
+        compressFileCache = false;
         firstRead = false;
         needNewStream = true;
         if (memCache != null) {
             length = memCache.length;
+            tracker.reserve(length);
         }
     }
     /**
@@ -154,15 +170,40 @@ public class CachedInputStream extends InputStream implements CachedStream {
      */
     CachedInputStream(
             CachedStreamFactory factory, Path cacheDirectory, Path cacheFile) {
+        this(factory, cacheDirectory, cacheFile, false);
+    }
+    /**
+     * Creates an input stream with an existing file cache, optionally
+     * compressed.
+     * @param factory stream factory
+     * @param cacheDirectory directory where to store large content
+     * @param cacheFile the file cache
+     * @param compressed whether the file cache is compressed
+     */
+    CachedInputStream(CachedStreamFactory factory,
+            Path cacheDirectory, Path cacheFile, boolean compressed) {
         this.factory = factory;
-        tracker = factory.new MemoryTracker();
+        tracker = factory.newMemoryTracker(this);
+        tracker.fileCache(cacheFile);
         fileCache = cacheFile;
         this.cacheDirectory = nullSafeCacheDirectory(cacheDirectory);
+        compressFileCache = compressed;
         firstRead = false;
         needNewStream = true;
         var file = cacheFile.toFile();
         if (file != null && file.exists() && file.isFile()) {
-            length = (int) file.length();
+            if (compressed) {
+                // uncompressed length is only known from the file blocks
+                try {
+                    this.cacheFile = CacheFile.open(cacheFile, true);
+                } catch (IOException e) {
+                    throw new StreamException(
+                            "Could not open cache file: " + cacheFile, e);
+                }
+                length = this.cacheFile.length();
+            } else {
+                length = file.length();
+            }
         }
     }
 
@@ -231,7 +272,7 @@ public class CachedInputStream extends InputStream implements CachedStream {
      */
     @Override
     public synchronized void reset() throws IOException {
-        pos = markpos;
+        pos = Math.max(0, markpos);
         markpos = -1;
     }
 
@@ -271,16 +312,17 @@ public class CachedInputStream extends InputStream implements CachedStream {
             if (isInMemory()) {
                 // When getting bytes, we add 0xFF to make it a signed int and
                 // avoid incorrect negative values for byte values > 127.
+                // Memory cache positions always fit in an int.
                 if (memOutputStream != null) {
-                    val = memOutputStream.getByte(cursor) & 0xFF;
+                    val = memSegment(cursor)[
+                            (int) (cursor - memSegmentStart)] & 0xFF;
                 } else if (cursor >= memCache.length) {
                     val = -1;
                 } else {
-                    val = memCache[cursor] & 0xFF;
+                    val = memCache[(int) cursor] & 0xFF;
                 }
             } else {
-                randomAccessFile.seek(cursor);
-                val = randomAccessFile.read();
+                val = cacheFile.read(cursor);
             }
             if (val != -1) {
                 pos++;
@@ -303,15 +345,22 @@ public class CachedInputStream extends InputStream implements CachedStream {
         if (firstRead) {
             var read = inputStream.read();
             if (read == -1) {
+                length = count;
+                // fully read, it will never grow again
+                tracker.doneGrowing();
+                deduplicateFileCache();
                 return read;
             }
-            if (randomAccessFile != null) {
+            if (digest != null) {
+                digest.update((byte) read);
+            }
+            if (cacheFile != null) {
                 // Write to file cache
-                randomAccessFile.write(read);
+                cacheFile.write(read);
             } else if (!tracker.hasEnoughAvailableMemory(memOutputStream, 1)) {
                 // Too big: create file cache and write to it.
                 cacheToFile();
-                randomAccessFile.write(read);
+                cacheFile.write(read);
             } else {
                 // Write to memory cache
                 memOutputStream.write(read);
@@ -351,23 +400,28 @@ public class CachedInputStream extends InputStream implements CachedStream {
     }
 
     private int readFromCursorToEndOfCache(
-            byte[] b, int off, int len, int cursor) throws IOException {
+            byte[] b, int off, int len, long cursor) throws IOException {
         int read;
-        var toRead = Math.min(len, count - cursor);
+        var toRead = (int) Math.min(len, count - cursor);
         if (isInMemory()) {
             if (memOutputStream != null) {
-                var bytes = new byte[toRead];
-                read = memOutputStream.getBytes(bytes, cursor);
-                System.arraycopy(bytes, 0, b, off, toRead);
+                read = 0;
+                while (read < toRead) {
+                    var segment = memSegment(cursor + read);
+                    var segmentOff = (int) (cursor + read - memSegmentStart);
+                    var num = Math.min(
+                            toRead - read, segment.length - segmentOff);
+                    System.arraycopy(segment, segmentOff, b, off + read, num);
+                    read += num;
+                }
             } else if (cursor >= memCache.length) {
                 read = -1;
             } else {
-                System.arraycopy(memCache, cursor, b, off, toRead);
+                System.arraycopy(memCache, (int) cursor, b, off, toRead);
                 read = toRead;
             }
         } else {
-            randomAccessFile.seek(cursor);
-            read = randomAccessFile.read(b, off, toRead);
+            read = cacheFile.read(cursor, b, off, toRead);
         }
         if (read != -1) {
             pos += read;
@@ -375,6 +429,145 @@ public class CachedInputStream extends InputStream implements CachedStream {
         return read;
     }
 
+    // Gets the memory cache buffer holding the given position (lower than
+    // "count"), keeping it for subsequent reads so consecutive positions
+    // do not need to locate it again.
+    private byte[] memSegment(long position) {
+        var capacity = memOutputStream.getBufferCapacity();
+        if (memSegment == null || position < memSegmentStart
+                || position >= memSegmentStart + capacity) {
+            var index = (int) (position / capacity);
+            memSegment = memOutputStream.getBuffer(index);
+            memSegmentStart = (long) index * capacity;
+        }
+        return memSegment;
+    }
+
+    /**
+     * Reads all remaining bytes from this stream and writes them to the
+     * given output stream. Content already cached in memory is written
+     * from the cache buffers directly, without copying it.
+     * @param out the output stream to write to
+     * @return number of bytes transferred
+     * @throws IOException problem reading or writing
+     * @since 3.0.0
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        Objects.requireNonNull(out, "'out' must not be null");
+        if (disposed) {
+            throw new IOException("CachedInputStream has been disposed.");
+        }
+        var transferred = 0L;
+        if (isInMemory()) {
+            transferred = transferMemory(out::write);
+        }
+        return transferred + super.transferTo(out);
+    }
+
+    /**
+     * Reads all remaining bytes from this stream and writes them to the
+     * given channel. Content already cached in memory is written from the
+     * cache buffers directly, without copying it, and content already
+     * cached to an uncompressed file is transferred by its file channel.
+     * @param channel the channel to write to
+     * @return number of bytes transferred
+     * @throws IOException problem reading or writing
+     * @since 3.0.0
+     */
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        Objects.requireNonNull(channel, "'channel' must not be null");
+        if (disposed) {
+            throw new IOException("CachedInputStream has been disposed.");
+        }
+        long transferred;
+        if (isInMemory()) {
+            transferred = transferMemory((b, off, len) -> {
+                var bb = ByteBuffer.wrap(b, off, len);
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                }
+            });
+        } else {
+            transferred = transferFile(channel);
+        }
+        // what is left is read from the wrapped stream, and cached
+        var buf = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+        int num;
+        while ((num = read(buf)) != -1) {
+            var bb = ByteBuffer.wrap(buf, 0, num);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+            transferred += num;
+        }
+        return transferred;
+    }
+
+    // Writes content cached in memory from the current position.
+    private long transferMemory(SegmentWriter writer) throws IOException {
+        var start = pos;
+        if (memOutputStream != null) {
+            while (pos < count) {
+                var segment = memSegment(pos);
+                var segmentOff = (int) (pos - memSegmentStart);
+                var num = (int) Math.min(
+                        count - pos, (long) segment.length - segmentOff);
+                writer.write(segment, segmentOff, num);
+                pos += num;
+            }
+        } else if (memCache != null && pos < memCache.length) {
+            // fully cached: all of it is in the array
+            writer.write(memCache, (int) pos, memCache.length - (int) pos);
+            skipToEnd();
+        }
+        return pos - start;
+    }
+
+    // Writes content cached to file from the current position.
+    private long transferFile(WritableByteChannel channel)
+            throws IOException {
+        var end = firstRead ? count : length;
+        if (end == UNDEFINED_LENGTH || pos >= end) {
+            return 0;
+        }
+        if (needNewStream) {
+            createInputStreamFromCache();
+        }
+        var start = pos;
+        cacheFile.transferTo(pos, end - pos, channel);
+        pos = end;
+        if (!firstRead) {
+            skipToEnd();
+        }
+        return pos - start;
+    }
+
+    // Once fully cached content was transferred from the cache, moves
+    // the stream reading the cache to its end as well.
+    private void skipToEnd() throws IOException {
+        if (needNewStream) {
+            createInputStreamFromCache();
+        }
+        // cache streams skip without reading
+        var toSkip = length - count;
+        while (toSkip > 0) {
+            var skipped = inputStream.skip(toSkip);
+            if (skipped <= 0) {
+                throw new IOException("Could not skip to end of cache.");
+            }
+            toSkip -= skipped;
+        }
+        pos = length;
+        count = length;
+        cacheEmpty = false;
+    }
+
+    @FunctionalInterface
+    private interface SegmentWriter {
+        void write(byte[] b, int off, int len) throws IOException;
+    }
+
 
 
     private int realRead(byte[] b, int off, int len) throws IOException {
@@ -384,16 +577,25 @@ public class CachedInputStream extends InputStream implements CachedStream {
         var num = inputStream.read(b, off, len);
         cacheEmpty = false;
         if (num == -1) {
+            if (firstRead) {
+                length = count;
+                // fully read, it will never grow again
+                tracker.doneGrowing();
+                deduplicateFileCache();
+            }
             return num;
         }
 
         if (firstRead) {
-            if (randomAccessFile != null) {
-                randomAccessFile.write(b, off, num);
+            if (digest != null) {
+                digest.update(b, off, num);
+            }
+            if (cacheFile != null) {
+                cacheFile.write(b, off, num);
             } else if (!tracker.hasEnoughAvailableMemory(
                     memOutputStream, num)) {
                 cacheToFile();
-                randomAccessFile.write(b, off, num);
+                cacheFile.write(b, off, num);
             } else {
                 memOutputStream.write(b, off, num);
             }
@@ -408,9 +610,13 @@ public class CachedInputStream extends InputStream implements CachedStream {
      */
     public void enforceFullCaching() throws IOException {
         if (firstRead) {
-            IOUtils.copy(this, NullOutputStream.INSTANCE);
-            length = count;
+            // No need to read what is left if the end was already reached
+            if (length == UNDEFINED_LENGTH) {
+                IOUtils.copy(this, NullOutputStream.INSTANCE);
+                length = count;
+            }
             firstRead = false;
+            tracker.doneGrowing();
         }
     }
 
@@ -439,14 +645,15 @@ public class CachedInputStream extends InputStream implements CachedStream {
         // Rewind
         quietClose(inputStream);
         quietClose(memOutputStream);
-        quietClose(randomAccessFile);
-        randomAccessFile = null;
         firstRead = false;
+        tracker.doneGrowing();
         needNewStream = true;
         if (memOutputStream != null) {
             LOG.trace("Creating memory cache from cached stream.");
             memCache = memOutputStream.toByteArray();
+            memOutputStream.dispose();
             memOutputStream = null;
+            memSegment = null;
         }
         // Reset marking
         pos = 0;
@@ -463,18 +670,21 @@ public class CachedInputStream extends InputStream implements CachedStream {
             inputStream = null;
         }
         if (memOutputStream != null) {
-            memOutputStream.flush();
-            memOutputStream.close();
+            memOutputStream.dispose();
             memOutputStream = null;
+            memSegment = null;
         }
-        if (randomAccessFile != null) {
-            randomAccessFile.close();
-            randomAccessFile = null;
+        if (cacheFile != null) {
+            cacheFile.close();
+            cacheFile = null;
         }
-        if (fileCache != null) {
-            FileUtil.delete(fileCache.toFile());
-            LOG.trace("Deleted cache file: {}", fileCache);
+        // a shared file cache is only deleted by its last user
+        if (fileCache != null && !disposed && (sharedFileKey == null
+                || factory.unshareFileCache(sharedFileKey))) {
+            factory.deleteFileCache(fileCache);
         }
+        digest = null;
+        tracker.dispose();
         disposed = true;
         cacheEmpty = true;
     }
@@ -533,10 +743,30 @@ public class CachedInputStream extends InputStream implements CachedStream {
      * it is always best to invoke this method after this stream was fully
      * read through normal use first.
      * </p>
+     * <p>Use {@link #lengthLong()} for streams that can be larger
+     * than 2 GB.</p>
      * @return the byte length
+     * @throws ArithmeticException if the length does not fit in an int
      * @since 1.6.1
      */
     public int length() {
+        return Math.toIntExact(lengthLong());
+    }
+
+    /**
+     * <p>Gets the length of the cached input stream. The length represents the
+     * number of bytes that were read from this input stream,
+     * after it was read entirely at least once.</p>
+     * <p><b>Note:</b> Invoking this method when this stream is only partially
+     * read (on a first read) will force it to read entirely and cache the
+     * inner input stream it wraps.  To prevent an unnecessary read cycle,
+     * it is always best to invoke this method after this stream was fully
+     * read through normal use first.
+     * </p>
+     * @return the byte length
+     * @since 3.0.0
+     */
+    public long lengthLong() {
         if (length == UNDEFINED_LENGTH) {
             LOG.debug("""
                 Obtaining stream length before a stream\s\
@@ -592,22 +822,65 @@ public class CachedInputStream extends InputStream implements CachedStream {
         return new CachedStreamFactory().newInputStream();
     }
 
+    // Once fully read, switches to the file cache of a stream with
+    // identical content, if any, or makes this one available to others.
+    private void deduplicateFileCache() throws IOException {
+        if (digest == null) {
+            return;
+        }
+        var key = HexFormat.of().formatHex(digest.digest()) + "-" + length
+                + (compressFileCache ? "-z" : "");
+        digest = null;
+        if (fileCache == null) {
+            return;
+        }
+        cacheFile.flush();
+        var sharedFile = factory.shareFileCache(key, fileCache);
+        sharedFileKey = key;
+        if (!sharedFile.equals(fileCache)) {
+            cacheFile.close();
+            factory.deleteFileCache(fileCache);
+            LOG.trace("Replaced cache file {} with identical {}",
+                    fileCache, sharedFile);
+            fileCache = sharedFile;
+            tracker.fileCache(sharedFile);
+            cacheFile = CacheFile.open(sharedFile, compressFileCache);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
     private void cacheToFile() throws IOException {
+        var start = System.nanoTime();
         fileCache = Files.createTempFile(
                 cacheDirectory, "CachedInputStream-", "-temp");
         fileCache.toFile().deleteOnExit();
         LOG.trace("Reached max cache size. Swapping to file: {}", fileCache);
-        randomAccessFile = new RandomAccessFile(fileCache.toFile(), "rw");
-        randomAccessFile.write(memOutputStream.toByteArray());
+        cacheFile = CacheFile.create(fileCache, compressFileCache);
+        var bytes = memOutputStream.size();
+        cacheFile.write(memOutputStream);
+        memOutputStream.dispose();
         memOutputStream = null;
+        memSegment = null;
+        tracker.release();
+        tracker.spilled(fileCache, bytes, System.nanoTime() - start);
     }
 
-    private void createInputStreamFromCache() throws FileNotFoundException {
+    private void createInputStreamFromCache() throws IOException {
         if (fileCache != null) {
             LOG.trace("Creating new input stream from file cache.");
-            randomAccessFile = new RandomAccessFile(fileCache.toFile(), "r");
-            var channel = randomAccessFile.getChannel();
-            inputStream = Channels.newInputStream(channel);
+            // Kept open between rewinds, and read with buffering
+            if (cacheFile == null) {
+                cacheFile = CacheFile.open(fileCache, compressFileCache);
+            }
+            inputStream = cacheFile.newInputStream();
         } else {
             LOG.trace("Creating new input stream from memory cache.");
             inputStream = new ByteArrayInputStream(memCache);
@@ -1,4 +1,4 @@
-/* Copyright 2014-2019 Norconex Inc.
+/* Copyright 2014-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,17 +17,16 @@ package com.norconex.commons.lang.io;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.commons.lang.io.CachedStreamFactory.MemoryTracker;
 
 /**
@@ -67,6 +66,7 @@ public class CachedOutputStream extends OutputStream implements CachedStream {
 
     private Path fileCache;
     private OutputStream fileOutputStream;
+    private boolean fileCacheCompressed;
     private boolean closed = false;
     private boolean cacheEmpty = true;
     private final Path cacheDirectory;
@@ -84,9 +84,9 @@ public class CachedOutputStream extends OutputStream implements CachedStream {
     CachedOutputStream(CachedStreamFactory factory,
             Path cacheDirectory, OutputStream out) {
         this.factory = factory;
-        tracker = factory.new MemoryTracker();
+        tracker = factory.newMemoryTracker(this);
 
-        memOutputStream = new ByteArrayOutputStream();
+        memOutputStream = factory.newMemoryCache();
 
         if (out != null) {
             if (out instanceof BufferedOutputStream) {
@@ -145,11 +145,11 @@ public class CachedOutputStream extends OutputStream implements CachedStream {
         if (fileOutputStream != null) {
             fileOutputStream.write(b, off, len);
         } else if (!tracker.hasEnoughAvailableMemory(
-                memOutputStream, len - off)) {
+                memOutputStream, len)) {
             cacheToFile();
             fileOutputStream.write(b, off, len);
         } else {
-            memOutputStream.write(b, 0, len);
+            memOutputStream.write(b, off, len);
         }
         cacheEmpty = false;
     }
@@ -166,13 +166,28 @@ public class CachedOutputStream extends OutputStream implements CachedStream {
         }
         CachedInputStream is;
         if (fileCache != null) {
-            is = factory.newInputStream(fileCache); //NOSONAR
+            // file cache must be complete before being read
+            try {
+                fileOutputStream.close();
+            } catch (IOException e) {
+                // incomplete, so it is deleted
+                try {
+                    dispose();
+                } catch (IOException de) {
+                    e.addSuppressed(de);
+                }
+                throw e;
+            }
+            fileOutputStream = null;
+            is = factory.newInputStream( //NOSONAR
+                    fileCache, fileCacheCompressed);
             fileCache = null; // we null it here so it does not get deleted
+            tracker.fileCache(null);
         } else if (memCache != null) {
             is = factory.newInputStream(memCache); //NOSONAR
         } else {
             memCache = memOutputStream.toByteArray();
-            memOutputStream.close();
+            memOutputStream.dispose();
             memOutputStream = null;
             is = factory.newInputStream(memCache); //NOSONAR
         } 
@@ -186,29 +201,45 @@ public class CachedOutputStream extends OutputStream implements CachedStream {
      * @since 3.0.0
      */
     public void dispose() throws IOException {
+        if (disposed) {
+            return;
+        }
         if (memCache != null) {
             memCache = null;
         }
-        closeOuputStream(outputStream);
-        outputStream = null;
-        closeOuputStream(memOutputStream);
-        memOutputStream = null;
-        closeOuputStream(fileOutputStream);
-        fileOutputStream = null;
-
-        if (fileCache != null) {
-            FileUtil.delete(fileCache.toFile());
-            LOG.trace("Deleted cache file: {}", fileCache);
+        // cache file and memory are released even if streams could not
+        // be flushed (e.g., write-behind failures)
+        try {
+            closeOuputStream(outputStream);
+        } finally {
+            outputStream = null;
+            if (memOutputStream != null) {
+                memOutputStream.dispose();
+                memOutputStream = null;
+            }
+            try {
+                closeOuputStream(fileOutputStream);
+            } finally {
+                fileOutputStream = null;
+                if (fileCache != null) {
+                    factory.deleteFileCache(fileCache);
+                    fileCache = null;
+                }
+                tracker.dispose();
+                disposed = true;
+                cacheEmpty = true;
+                closed = true;
+            }
         }
-        disposed = true;
-        cacheEmpty = true;
-        closed = true;
     }
 
     private void closeOuputStream(OutputStream os) throws IOException {
         if (os != null) {
-            os.flush();
-            try { os.close(); } catch (IOException e) { /*NOOP*/ }
+            try {
+                os.flush();
+            } finally {
+                try { os.close(); } catch (IOException e) { /*NOOP*/ }
+            }
         }
     }
 
@@ -232,6 +263,7 @@ public class CachedOutputStream extends OutputStream implements CachedStream {
     public void close() throws IOException {
         flush();
         closed = true;
+        tracker.doneGrowing();
     }
 
     /**
@@ -276,17 +308,45 @@ public class CachedOutputStream extends OutputStream implements CachedStream {
     }
 
     private void cacheToFile() throws IOException {
+        var start = System.nanoTime();
         fileCache = Files.createTempFile(
                 cacheDirectory, "CachedOutputStream-", "-temp");
         fileCache.toFile().deleteOnExit();
         LOG.debug("Reached max cache size. Swapping to file: {}", fileCache);
-        // RAF is closed with this stream
-        var f =
-                new RandomAccessFile(fileCache.toFile(), "rw"); //NOSONAR
-        var channel = f.getChannel();
-        fileOutputStream = Channels.newOutputStream(channel);
+        var bytes = memOutputStream.size();
+        writeToFileCache();
+        // with write-behind, only measures handing over the memory cache
+        tracker.spilled(fileCache, bytes, System.nanoTime() - start);
+    }
 
-        IOUtils.write(memOutputStream.toByteArray(), fileOutputStream);
+    private void writeToFileCache() throws IOException {
+        if (factory.isCompressFileCache()) {
+            fileCacheCompressed = true;
+            // file is closed with this stream
+            var file = CacheFile.create(fileCache, true);
+            fileOutputStream = file.newOutputStream();
+            file.write(memOutputStream);
+            memOutputStream.dispose();
+            memOutputStream = null;
+            tracker.release();
+            return;
+        }
+        // channel is closed with this stream
+        var channel = FileChannel.open(fileCache, StandardOpenOption.WRITE);
+        var executor = factory.getWriteBehindExecutor();
+        if (executor != null) {
+            var out = new WriteBehindOutputStream(channel, executor,
+                    factory.getWriteBehindMaxPending());
+            fileOutputStream = out;
+            // memory is released once written
+            out.writeBehind(memOutputStream, tracker);
+            memOutputStream = null;
+            return;
+        }
+        fileOutputStream = Channels.newOutputStream(channel);
+        memOutputStream.writeTo(channel);
+        memOutputStream.dispose();
         memOutputStream = null;
+        tracker.release();
     }
 }
@@ -1,4 +1,4 @@
-/* Copyright 2014-2019 Norconex Inc.
+/* Copyright 2014-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,21 +15,37 @@
 package com.norconex.commons.lang.io;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.Cleaner;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.commons.lang.unit.DataUnit;
 
 /**
@@ -56,25 +72,110 @@ import com.norconex.commons.lang.unit.DataUnit;
  * </ul>
  * <p>
  * Initialization values passed in constructor always take precedence.
+ * Instances max memory is capped to about 2 GB, the maximum size of
+ * a Java array. Content of any size can be cached to file.
+ * </p>
+ * <p>
+ * Memory used by streams is accounted for as they grow, spill to file,
+ * or get disposed, so checking the pool remaining memory does not
+ * depend on how many streams were created. Memory used by streams
+ * garbage collected without being disposed is released automatically.
+ * </p>
+ * <p>
+ * By default, a stream needing more memory than what is left in the pool
+ * spills its memory cache to file right away. Set a
+ * {@link #setMaxMemoryWait(Duration) maximum memory wait} to have it
+ * wait for memory to be released instead, and a
+ * {@link #setSpillPolicy(SpillPolicy) spill policy} to select which
+ * stream should spill to release memory.
+ * </p>
+ * <p>
+ * Memory caches can also obtain their buffers from a shared
+ * {@link #setBufferPool(ByteArrayPool) buffer pool}, and output streams
+ * spilled to file can be written from a
+ * {@link #setWriteBehindExecutor(Executor) write-behind executor}.
+ * Input streams with identical content can
+ * {@link #setDeduplicateFileCache(boolean) share the same file cache},
+ * and file caches can be {@link #setCompressFileCache(boolean) compressed}.
+ * </p>
+ * <p>
+ * Usage of streams created by this factory can be monitored with
+ * {@link #getMetrics()}, and streams garbage collected without being
+ * disposed can be reported to a
+ * {@link #setLeakListener(Consumer) leak listener}.
  * </p>
  *
  */
 public class CachedStreamFactory {
 
-    public static final int DEFAULT_MAX_MEM_INSTANCE =
-            DataUnit.MB.toBytes(100).intValue();
-    public static final int DEFAULT_MAX_MEM_POOL =
-            DataUnit.GB.toBytes(1).intValue();
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CachedStreamFactory.class);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    public static final long DEFAULT_MAX_MEM_INSTANCE =
+            DataUnit.MB.toBytes(100).longValue();
+    public static final long DEFAULT_MAX_MEM_POOL =
+            DataUnit.GB.toBytes(1).longValue();
+
+    /**
+     * Default maximum number of pending write-behind segments per stream.
+     * @since 3.0.0
+     */
+    public static final int DEFAULT_WRITE_BEHIND_MAX_PENDING = 8;
+
+    // Memory caches are backed by arrays, limiting their size.
+    private static final long MAX_MEM_INSTANCE_LIMIT = Integer.MAX_VALUE - 8L;
 
     private static final String PROP_MAX_MEM_POOL = "cachedstream.mem.pool";
     private static final String PROP_MAX_MEM_INSTANCE =
             "cachedstream.mem.instance";
     private static final String PROP_DIR = "cachedstream.dir";
 
-    private final int maxMemoryPool;
-    private final int maxMemoryInstance;
+    // Spill time histogram upper bounds, in milliseconds
+    private static final long[] SPILL_TIME_BOUNDS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000,
+            Long.MAX_VALUE };
+
+    private final long maxMemoryPool;
+    private final long maxMemoryInstance;
     private final Path cacheDirectory;
 
+    private volatile SpillPolicy spillPolicy = SpillPolicy.REQUESTER;
+    private volatile Duration maxMemoryWait = Duration.ZERO;
+    private volatile ByteArrayPool bufferPool;
+    private volatile Executor writeBehindExecutor;
+    private volatile int writeBehindMaxPending =
+            DEFAULT_WRITE_BEHIND_MAX_PENDING;
+    private volatile boolean deduplicateFileCache;
+    private volatile boolean compressFileCache;
+    private volatile Consumer<CachedStreamLeak> leakListener;
+    private volatile int leakTraceInterval;
+
+    // Content key to file cache shared by identical streams
+    private final Map<String, SharedFile> sharedFiles = new HashMap<>();
+
+    // Memory reserved by all trackers
+    private final AtomicLong poolMemory = new AtomicLong();
+    // Trackers of streams that can be asked to spill
+    private final Set<MemoryTracker> growingTrackers =
+            ConcurrentHashMap.newKeySet();
+    private final Object memoryLock = new Object();
+    private final AtomicInteger memoryWaiters = new AtomicInteger();
+
+    // Metrics
+    private final AtomicLong createdStreams = new AtomicLong();
+    private final AtomicLong disposedStreams = new AtomicLong();
+    private final AtomicLong leakedStreams = new AtomicLong();
+    private final AtomicLong spillCount = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong spillNanos = new AtomicLong();
+    private final AtomicLongArray spillTimeCounts =
+            new AtomicLongArray(SPILL_TIME_BOUNDS.length);
+    // File caches created and not yet deleted
+    private final Set<Path> fileCaches = ConcurrentHashMap.newKeySet();
+
+    // Only used for diagnostics, not memory accounting
     private final Map<CachedStream, Void> streams =
             Collections.synchronizedMap(new WeakHashMap<CachedStream, Void>());
 
@@ -86,8 +187,8 @@ public class CachedStreamFactory {
      *     memory by each cached stream instance created
      */
     public CachedStreamFactory(
-            int maxMemoryPool,
-            int maxMemoryInstance) {
+            long maxMemoryPool,
+            long maxMemoryInstance) {
         this(maxMemoryPool, maxMemoryInstance, getDefaultCacheDirectory());
     }
     /**
@@ -100,8 +201,8 @@ public class CachedStreamFactory {
      * @since 2.0.0
      */
     public CachedStreamFactory(
-            int maxMemoryPool,
-            int maxMemoryInstance,
+            long maxMemoryPool,
+            long maxMemoryInstance,
             Path cacheDirectory) {
         Objects.requireNonNull(
                 cacheDirectory, "'cacheDirectory' must not be null");
@@ -130,12 +231,12 @@ public class CachedStreamFactory {
         this(getDefaultCacheDirectory());
     }
 
-    private static int getDefaultMaxMemoryPool() {
-        return NumberUtils.toInt(System.getProperty(
+    private static long getDefaultMaxMemoryPool() {
+        return NumberUtils.toLong(System.getProperty(
                 PROP_MAX_MEM_POOL), DEFAULT_MAX_MEM_POOL);
     }
-    private static int getDefaultMaxMemoryInstance() {
-        return NumberUtils.toInt(System.getProperty(
+    private static long getDefaultMaxMemoryInstance() {
+        return NumberUtils.toLong(System.getProperty(
                 PROP_MAX_MEM_INSTANCE), DEFAULT_MAX_MEM_INSTANCE);
     }
     private static Path getDefaultCacheDirectory() {
@@ -146,28 +247,366 @@ public class CachedStreamFactory {
         return FileUtils.getTempDirectory().toPath();
     }
 
-    public int getMaxMemoryPool() {
+    public long getMaxMemoryPool() {
         return maxMemoryPool;
     }
 
-    public int getMaxMemoryInstance() {
+    public long getMaxMemoryInstance() {
         return maxMemoryInstance;
     }
 
-    /*default*/ int getPoolCurrentMemory() {
-        int byteSize = 0;
-        synchronized (streams) {
-            for (CachedStream stream : streams.keySet()) {
-                if (stream != null) {
-                    byteSize += stream.getMemCacheSize();
-                }
+    /**
+     * Gets the policy selecting which stream should spill to file when
+     * there is not enough memory left in the pool.
+     * @return spill policy
+     * @since 3.0.0
+     */
+    public SpillPolicy getSpillPolicy() {
+        return spillPolicy;
+    }
+    /**
+     * Sets the policy selecting which stream should spill to file when
+     * there is not enough memory left in the pool. Only used when the
+     * maximum memory wait is greater than zero.
+     * Default is {@link SpillPolicy#REQUESTER}.
+     * @param spillPolicy spill policy
+     * @return this factory
+     * @since 3.0.0
+     */
+    public CachedStreamFactory setSpillPolicy(SpillPolicy spillPolicy) {
+        this.spillPolicy = Objects.requireNonNull(
+                spillPolicy, "'spillPolicy' must not be null");
+        return this;
+    }
+
+    /**
+     * Gets the maximum amount of time a stream waits for pool memory to
+     * be released before spilling to file.
+     * @return maximum memory wait
+     * @since 3.0.0
+     */
+    public Duration getMaxMemoryWait() {
+        return maxMemoryWait;
+    }
+    /**
+     * Sets the maximum amount of time a stream waits for pool memory to
+     * be released before spilling to file. Waiting on memory applies
+     * back-pressure on threads using streams. Default is zero (no wait).
+     * @param maxMemoryWait maximum memory wait
+     * @return this factory
+     * @since 3.0.0
+     */
+    public CachedStreamFactory setMaxMemoryWait(Duration maxMemoryWait) {
+        this.maxMemoryWait = Objects.requireNonNull(
+                maxMemoryWait, "'maxMemoryWait' must not be null");
+        return this;
+    }
+
+    /**
+     * Gets the pool memory caches obtain their buffers from, if any.
+     * @return buffer pool, or <code>null</code>
+     * @since 3.0.0
+     */
+    public ByteArrayPool getBufferPool() {
+        return bufferPool;
+    }
+    /**
+     * Sets a pool memory caches obtain their buffers from, and return them
+     * to when spilling to file or being disposed. Sharing a pool reduces
+     * garbage collection when many short-lived streams are created.
+     * Default is <code>null</code> (buffers are created as needed).
+     * @param bufferPool buffer pool, or <code>null</code>
+     * @return this factory
+     * @since 3.0.0
+     */
+    public CachedStreamFactory setBufferPool(ByteArrayPool bufferPool) {
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * Gets the executor writing output stream file caches in the
+     * background, if any.
+     * @return write-behind executor, or <code>null</code>
+     * @since 3.0.0
+     */
+    public Executor getWriteBehindExecutor() {
+        return writeBehindExecutor;
+    }
+    /**
+     * Sets an executor writing {@link CachedOutputStream} file caches in
+     * the background. Once an output stream spills to file, its
+     * memory cache and subsequent writes are handed to the executor in
+     * 64 KB segments, so writing threads are not slowed down by disk
+     * latency. Streams wait for pending segments to be written when
+     * flushed, or when getting their input stream.
+     * Default is <code>null</code> (written by the writing thread).
+     * @param writeBehindExecutor write-behind executor, or
+     *     <code>null</code>
+     * @return this factory
+     * @since 3.0.0
+     */
+    public CachedStreamFactory setWriteBehindExecutor(
+            Executor writeBehindExecutor) {
+        this.writeBehindExecutor = writeBehindExecutor;
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of segments each output stream can have
+     * waiting to be written in the background.
+     * @return maximum pending segments
+     * @since 3.0.0
+     */
+    public int getWriteBehindMaxPending() {
+        return writeBehindMaxPending;
+    }
+    /**
+     * Sets the maximum number of segments each output stream can have
+     * waiting to be written in the background. Once reached, writing
+     * to a stream blocks until a segment is written. Only used with a
+     * {@link #setWriteBehindExecutor(Executor) write-behind executor}.
+     * Default is {@value #DEFAULT_WRITE_BEHIND_MAX_PENDING}.
+     * @param writeBehindMaxPending maximum pending segments
+     * @return this factory
+     * @since 3.0.0
+     */
+    public CachedStreamFactory setWriteBehindMaxPending(
+            int writeBehindMaxPending) {
+        if (writeBehindMaxPending < 1) {
+            throw new IllegalArgumentException(
+                    "'writeBehindMaxPending' must be greater than zero.");
+        }
+        this.writeBehindMaxPending = writeBehindMaxPending;
+        return this;
+    }
+
+    /**
+     * Whether input streams with identical content share the same
+     * file cache.
+     * @return <code>true</code> if deduplicating file caches
+     * @since 3.0.0
+     */
+    public boolean isDeduplicateFileCache() {
+        return deduplicateFileCache;
+    }
+    /**
+     * Sets whether input streams with identical content share the same
+     * file cache. When <code>true</code>, {@link CachedInputStream}
+     * content is hashed (SHA-256) as it is first read. Once fully read,
+     * the file cache of a stream that spilled to file is replaced with the
+     * one of a stream having the same hash and length, if any, and
+     * deleted. A shared file cache is deleted when the last stream using
+     * it is disposed. Saves disk space when caching many identical
+     * documents, at the cost of hashing all content.
+     * Default is <code>false</code>.
+     * @param deduplicateFileCache <code>true</code> to deduplicate
+     *     file caches
+     * @return this factory
+     * @since 3.0.0
+     */
+    public CachedStreamFactory setDeduplicateFileCache(
+            boolean deduplicateFileCache) {
+        this.deduplicateFileCache = deduplicateFileCache;
+        return this;
+    }
+
+    /**
+     * Whether content spilled to file caches is compressed.
+     * @return <code>true</code> if compressing file caches
+     * @since 3.0.0
+     */
+    public boolean isCompressFileCache() {
+        return compressFileCache;
+    }
+    /**
+     * Sets whether content spilled to file caches is compressed.
+     * When <code>true</code>, file caches are written as independently
+     * compressed blocks of 64 KB (using "deflate" at its fastest level),
+     * so streams can still be read from any position, as when rewinding
+     * or resetting to a mark. Reduces disk usage and I/O for content that
+     * compresses well (e.g., text), at the cost of CPU time.
+     * Output streams do not use the
+     * {@link #setWriteBehindExecutor(Executor) write-behind executor}
+     * when compressing. Default is <code>false</code>.
+     * @param compressFileCache <code>true</code> to compress file caches
+     * @return this factory
+     * @since 3.0.0
+     */
+    public CachedStreamFactory setCompressFileCache(
+            boolean compressFileCache) {
+        this.compressFileCache = compressFileCache;
+        return this;
+    }
+
+    /**
+     * Gets the listener notified of streams garbage collected without
+     * being disposed, if any.
+     * @return leak listener, or <code>null</code>
+     * @since 3.0.0
+     */
+    public Consumer<CachedStreamLeak> getLeakListener() {
+        return leakListener;
+    }
+    /**
+     * Sets a listener notified of streams garbage collected without
+     * being disposed. Their memory is released regardless, but their file
+     * cache, if any, is only deleted when the JVM exits. The listener is
+     * invoked from a cleaner thread, so it should return quickly.
+     * Default is <code>null</code> (leaks are only logged, at debug level).
+     * @param leakListener leak listener, or <code>null</code>
+     * @return this factory
+     * @since 3.0.0
+     * @see #setLeakTraceInterval(int)
+     */
+    public CachedStreamFactory setLeakListener(
+            Consumer<CachedStreamLeak> leakListener) {
+        this.leakListener = leakListener;
+        return this;
+    }
+
+    /**
+     * Gets how often the creation stack trace of streams is captured
+     * for leak reporting.
+     * @return leak trace interval
+     * @since 3.0.0
+     */
+    public int getLeakTraceInterval() {
+        return leakTraceInterval;
+    }
+    /**
+     * Sets how often the creation stack trace of streams is captured
+     * for leak reporting: one stream out of the given number of streams
+     * created. Use <code>1</code> to capture it for every stream, which
+     * is best kept for troubleshooting given the cost of capturing
+     * stack traces. Default is <code>0</code> (never captured).
+     * @param leakTraceInterval leak trace interval
+     * @return this factory
+     * @since 3.0.0
+     * @see CachedStreamLeak#getCreationTrace()
+     */
+    public CachedStreamFactory setLeakTraceInterval(int leakTraceInterval) {
+        if (leakTraceInterval < 0) {
+            throw new IllegalArgumentException(
+                    "'leakTraceInterval' must not be negative.");
+        }
+        this.leakTraceInterval = leakTraceInterval;
+        return this;
+    }
+
+    /**
+     * Gets metrics about streams created by this factory so far.
+     * @return metrics snapshot
+     * @since 3.0.0
+     */
+    public CachedStreamMetrics getMetrics() {
+        var histogram = new TreeMap<Long, Long>();
+        for (var i = 0; i < SPILL_TIME_BOUNDS.length; i++) {
+            histogram.put(SPILL_TIME_BOUNDS[i], spillTimeCounts.get(i));
+        }
+        return CachedStreamMetrics.builder()
+                .createdStreams(createdStreams.get())
+                .disposedStreams(disposedStreams.get())
+                .leakedStreams(leakedStreams.get())
+                .memoryBytes(poolMemory.get())
+                .spillCount(spillCount.get())
+                .spilledBytes(spilledBytes.get())
+                .spillTime(Duration.ofNanos(spillNanos.get()))
+                .spillTimeHistogram(Collections.unmodifiableSortedMap(
+                        histogram))
+                .fileCaches(fileCaches.size())
+                .build();
+    }
+
+    // Deletes a file cache no longer used by any stream.
+    /*default*/ void deleteFileCache(Path file) throws IOException {
+        FileUtil.delete(file.toFile());
+        fileCaches.remove(file);
+        LOG.trace("Deleted cache file: {}", file);
+    }
+
+    // Gets the file cache to use for the given content key, registering
+    // the given file if the key is new.
+    /*default*/ Path shareFileCache(String contentKey, Path file) {
+        synchronized (sharedFiles) {
+            var shared = sharedFiles.computeIfAbsent(
+                    contentKey, k -> new SharedFile(file));
+            shared.references++;
+            return shared.file;
+        }
+    }
+    // Whether the file cache for the given content key is no longer used
+    // and can be deleted.
+    /*default*/ boolean unshareFileCache(String contentKey) {
+        synchronized (sharedFiles) {
+            var shared = sharedFiles.get(contentKey);
+            if (shared == null || --shared.references <= 0) {
+                sharedFiles.remove(contentKey);
+                return true;
             }
+            return false;
         }
-        return byteSize;
     }
-    /*default*/ int getPoolRemainingMemory() {
+
+    // Cached streams are not thread-safe, so their memory cache
+    // does not need locking.
+    /*default*/ ByteArrayOutputStream newMemoryCache() {
+        var pool = bufferPool;
+        return pool != null
+                ? new ByteArrayOutputStream(pool, true)
+                : new ByteArrayOutputStream(
+                        ByteArrayOutputStream.DEFAULT_INITIAL_CAPACITY, true);
+    }
+
+    /*default*/ long getPoolCurrentMemory() {
+        return poolMemory.get();
+    }
+    /*default*/ long getPoolRemainingMemory() {
         return Math.max(0, maxMemoryPool - getPoolCurrentMemory());
     }
+    // Memory reserved by the returned tracker is released when
+    // the stream is garbage collected, if not already.
+    /*default*/ MemoryTracker newMemoryTracker(CachedStream stream) {
+        var created = createdStreams.incrementAndGet();
+        var interval = leakTraceInterval;
+        var tracker = new MemoryTracker(interval > 0 && created % interval == 0
+                ? new Throwable("Cached stream creation.") : null);
+        var streamType = stream.getClass().getSimpleName();
+        CLEANER.register(stream, () -> {
+            var bytes = tracker.release();
+            if (!tracker.disposed) {
+                leaked(new CachedStreamLeak(streamType, tracker.creationTime,
+                        bytes, tracker.fileCache, tracker.creationTrace));
+            }
+        });
+        return tracker;
+    }
+
+    private void leaked(CachedStreamLeak leak) {
+        leakedStreams.incrementAndGet();
+        LOG.debug("{} garbage collected without being disposed. "
+                + "Released {} bytes. Streams not yet garbage "
+                + "collected: {}", leak.getStreamType(),
+                leak.getMemoryBytes(), streams.size());
+        var listener = leakListener;
+        if (listener != null) {
+            try {
+                listener.accept(leak);
+            } catch (RuntimeException e) {
+                LOG.error("Cached stream leak listener failed.", e);
+            }
+        }
+    }
+
+    private void spillTimed(long nanos) {
+        spillNanos.addAndGet(nanos);
+        var millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        var i = 0;
+        while (millis > SPILL_TIME_BOUNDS[i]) {
+            i++;
+        }
+        spillTimeCounts.incrementAndGet(i);
+    }
 
     /*default*/ CachedInputStream newInputStream(byte[] bytes) {
         return registerStream(
@@ -205,6 +644,11 @@ public class CachedStreamFactory {
         return registerStream(
                 new CachedInputStream(this, cacheDirectory, path));
     }
+    /*default*/ CachedInputStream newInputStream(
+            Path path, boolean compressed) {
+        return registerStream(new CachedInputStream(
+                this, cacheDirectory, path, compressed));
+    }
     public CachedInputStream newInputStream(InputStream is) {
         return registerStream(new CachedInputStream(this, cacheDirectory, is));
     }
@@ -224,24 +668,201 @@ public class CachedStreamFactory {
         return s;
     }
 
+    private boolean tryReserve(long bytes) {
+        long current;
+        do {
+            current = poolMemory.get();
+            if (current + bytes > maxMemoryPool) {
+                return false;
+            }
+        } while (!poolMemory.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    private void released() {
+        if (memoryWaiters.get() > 0) {
+            synchronized (memoryLock) {
+                memoryLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Keeps track of memory used by a cached stream, reserving it from
+     * the pool in 1 KB chunks as the stream grows.
+     */
     public class MemoryTracker {
         private static final int CHECK_CHUNK_SIZE = (int) FileUtils.ONE_KB;
-        private int poolRemaining = -1;
-        private int kbReadSoFar = -1;
-        // Checks every KB read the new max CacheSize
+        private final AtomicLong reserved = new AtomicLong();
+        private final long creationTime = System.currentTimeMillis();
+        private final Throwable creationTrace;
+        private volatile long lastAccessTime = creationTime;
+        private volatile boolean spillRequested;
+        private volatile boolean disposed;
+        private volatile Path fileCache;
+
+        /**
+         * Creates a memory tracker using this factory memory pool.
+         * Unlike trackers of streams created by this factory, it is not
+         * accounted for in {@link #getMetrics() metrics} nor checked for
+         * leaks.
+         */
+        public MemoryTracker() {
+            this(null);
+        }
+        private MemoryTracker(Throwable creationTrace) {
+            this.creationTrace = creationTrace;
+        }
+
+        /**
+         * Whether a stream memory cache can grow by the given number of
+         * bytes without exceeding the maximum memory of this factory pool
+         * or its instances. If so, the memory is reserved for the stream.
+         * Otherwise, the stream is expected to spill to file.
+         * @param memOutputStream stream memory cache
+         * @param bytesToAdd number of bytes to add to memory cache
+         * @return <code>true</code> if there is enough memory
+         */
         public boolean hasEnoughAvailableMemory(
                 ByteArrayOutputStream memOutputStream,
                 int bytesToAdd) {
-            int kbRead = memOutputStream.size() / CHECK_CHUNK_SIZE;
-            if (kbRead != kbReadSoFar) {
-                kbReadSoFar = kbRead;
-                poolRemaining = getPoolRemainingMemory();
+            long needed = memOutputStream.size() + (long) bytesToAdd;
+            var maxInstance =
+                    Math.min(getMaxMemoryInstance(), MAX_MEM_INSTANCE_LIMIT);
+            if (spillRequested || needed > maxInstance) {
+                return false;
+            }
+            var current = reserved.get();
+            if (needed <= current) {
+                return true;
+            }
+            // Reserving by chunks to limit access to shared pool, unless
+            // there is only room for what is needed.
+            var chunk = Math.min(maxInstance,
+                    (needed + CHECK_CHUNK_SIZE - 1)
+                            / CHECK_CHUNK_SIZE * CHECK_CHUNK_SIZE);
+            if (tryReserve(chunk - current)) {
+                reserved.addAndGet(chunk - current);
+            } else if (tryReserve(needed - current)
+                    || awaitMemory(needed - current)) {
+                reserved.addAndGet(needed - current);
+            } else {
+                return false;
+            }
+            // only when growing, not on every call (i.e., every byte)
+            lastAccessTime = System.currentTimeMillis();
+            growingTrackers.add(this);
+            return true;
+        }
+
+        private boolean awaitMemory(long bytes) {
+            var timeout = maxMemoryWait.toNanos();
+            if (timeout <= 0) {
+                return false;
+            }
+            var selected = spillPolicy.select(
+                    this, Collections.unmodifiableSet(growingTrackers));
+            if (selected == this) {
+                return false;
             }
-            int remainingMemory = Math.min(
-                    poolRemaining,
-                    getMaxMemoryInstance() - memOutputStream.size());
-            return bytesToAdd <= remainingMemory;
+            if (selected != null) {
+                selected.spillRequested = true;
+            }
+            var deadline = System.nanoTime() + timeout;
+            memoryWaiters.incrementAndGet();
+            try {
+                synchronized (memoryLock) {
+                    while (!tryReserve(bytes)) {
+                        var left = deadline - System.nanoTime();
+                        if (left <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(memoryLock, left);
+                    }
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                memoryWaiters.decrementAndGet();
+            }
+        }
+
+        /**
+         * Gets the number of bytes reserved by this tracker stream.
+         * @return memory size
+         * @since 3.0.0
+         */
+        public long getMemorySize() {
+            return reserved.get();
+        }
+        /**
+         * Gets when this tracker stream was created, in milliseconds
+         * since epoch.
+         * @return creation time
+         * @since 3.0.0
+         */
+        public long getCreationTime() {
+            return creationTime;
+        }
+        /**
+         * Gets when this tracker stream last grew (or was created),
+         * in milliseconds since epoch.
+         * @return last access time
+         * @since 3.0.0
+         */
+        public long getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        // Reserves memory already in use, regardless of what is left.
+        /*default*/ void reserve(long bytes) {
+            reserved.addAndGet(bytes);
+            poolMemory.addAndGet(bytes);
+        }
+        // Stream will no longer grow, so can no longer be asked to spill.
+        /*default*/ void doneGrowing() {
+            growingTrackers.remove(this);
+        }
+        // Stream spilled the given number of bytes to a new file cache.
+        /*default*/ void spilled(Path file, long bytes, long nanos) {
+            fileCaches.add(file);
+            fileCache = file;
+            spillCount.incrementAndGet();
+            spilledBytes.addAndGet(bytes);
+            spillTimed(nanos);
+        }
+        // Stream now uses the given file cache (null if none).
+        /*default*/ void fileCache(Path file) {
+            fileCache = file;
+        }
+        // Stream was disposed, so it is not leaked when garbage collected.
+        /*default*/ void dispose() {
+            if (!disposed) {
+                disposed = true;
+                disposedStreams.incrementAndGet();
+            }
+            release();
+        }
+        // Releases all memory reserved so far, returning how much.
+        /*default*/ long release() {
+            doneGrowing();
+            spillRequested = false;
+            var bytes = reserved.getAndSet(0);
+            if (bytes > 0) {
+                poolMemory.addAndGet(-bytes);
+                released();
+            }
+            return bytes;
         }
     }
 
+    private static final class SharedFile {
+        private final Path file;
+        private int references;
+        private SharedFile(Path file) {
+            this.file = file;
+        }
+    }
 }
@@ -0,0 +1,48 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.io;
+
+import java.nio.file.Path;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * A cached stream that was garbage collected without being disposed.
+ * @since 3.0.0
+ * @see CachedStreamFactory#setLeakListener(java.util.function.Consumer)
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class CachedStreamLeak {
+
+    /** Simple class name of the leaked stream. */
+    String streamType;
+    /** When the stream was created, in milliseconds since epoch. */
+    long creationTime;
+    /** Number of bytes of memory the stream was still holding. */
+    long memoryBytes;
+    /**
+     * File cache the stream was using, if not deleted, or
+     * <code>null</code>.
+     */
+    Path fileCache;
+    /**
+     * Where the stream was created, if sampled, or <code>null</code>.
+     * @see CachedStreamFactory#setLeakTraceInterval(int)
+     */
+    Throwable creationTrace;
+}
@@ -0,0 +1,70 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.io;
+
+import java.time.Duration;
+import java.util.SortedMap;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * <p>
+ * Snapshot of cached streams metrics for a {@link CachedStreamFactory},
+ * since its creation. Values are gathered without locking, so they may
+ * be slightly out of sync with each other when streams are in use.
+ * </p>
+ * @since 3.0.0
+ * @see CachedStreamFactory#getMetrics()
+ */
+@Value
+@Builder(access = AccessLevel.PACKAGE)
+public class CachedStreamMetrics {
+
+    /** Number of streams created. */
+    long createdStreams;
+    /** Number of streams disposed. */
+    long disposedStreams;
+    /**
+     * Number of streams garbage collected without being disposed.
+     * @see CachedStreamFactory#setLeakListener(java.util.function.Consumer)
+     */
+    long leakedStreams;
+    /** Number of bytes currently held in memory by streams. */
+    long memoryBytes;
+    /** Number of times a stream memory cache was spilled to file. */
+    long spillCount;
+    /** Number of bytes moved from memory to file when spilling. */
+    long spilledBytes;
+    /** Total time spent spilling memory caches to file. */
+    Duration spillTime;
+    /**
+     * Number of spills per duration range. Keys are each range upper
+     * bound (inclusive), in milliseconds, the last one being
+     * {@link Long#MAX_VALUE}. All ranges are present.
+     */
+    SortedMap<Long, Long> spillTimeHistogram;
+    /** Number of file caches created and not yet deleted. */
+    int fileCaches;
+
+    /**
+     * Gets the number of streams neither disposed nor garbage collected.
+     * @return live stream count
+     */
+    public long getLiveStreams() {
+        return createdStreams - disposedStreams - leakedStreams;
+    }
+}
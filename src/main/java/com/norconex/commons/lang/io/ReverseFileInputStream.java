@@ -1,4 +1,4 @@
-/* Copyright 2010-2022 Norconex Inc.
+/* Copyright 2010-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,25 +14,37 @@
  */
 package com.norconex.commons.lang.io;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
 
 /**
  * {@link InputStream} implementation for streaming files in reverse order
  * (from the end of file to its beginning).
+ * The file is read backwards one block at a time, using positional reads.
  */
 public class ReverseFileInputStream extends InputStream { //NOSONAR
 
-    private static final int BUFFER_SIZE = 4096;
+    /**
+     * Default size of blocks read from the file (64 KB).
+     * @since 3.0.0
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
 
-    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] buffer;
 
-    private final RandomAccessFile raf;
+    private final FileChannel channel;
 
+    // file position of the first byte in buffer
     private long currentPositionInFile;
 
+    // number of bytes in buffer not yet read (read from the end)
     private int currentPositionInBuffer;
 
     /**
@@ -41,35 +53,122 @@ public class ReverseFileInputStream extends InputStream { //NOSONAR
      * @throws IOException problem streaming the file
      */
     public ReverseFileInputStream(File file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE);
+    }
+    /**
+     * Creates a new <code>ReverseFileInputStream</code> instance, reading
+     * blocks of the given size. Larger blocks mean fewer reads
+     * on large files.
+     * @param file the file to stream
+     * @param blockSize number of bytes read from the file at once
+     * @throws IOException problem streaming the file
+     * @since 3.0.0
+     */
+    public ReverseFileInputStream(File file, int blockSize)
+            throws IOException {
         assertFile(file);
-        raf = new RandomAccessFile(file, "r");
-        currentPositionInFile = raf.length();
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(
+                    "Block size must be greater than zero: " + blockSize);
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buffer = new byte[(int) Math.max(1,
+                Math.min(blockSize, channel.size()))];
+        currentPositionInFile = channel.size();
         currentPositionInBuffer = 0;
     }
+    /**
+     * Creates a new <code>ReverseFileInputStream</code> instance.
+     * @param file the file to stream
+     * @throws IOException problem streaming the file
+     * @since 3.0.0
+     */
+    public ReverseFileInputStream(Path file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE);
+    }
+    /**
+     * Creates a new <code>ReverseFileInputStream</code> instance, reading
+     * blocks of the given size. Larger blocks mean fewer reads
+     * on large files.
+     * @param file the file to stream
+     * @param blockSize number of bytes read from the file at once
+     * @throws IOException problem streaming the file
+     * @since 3.0.0
+     */
+    public ReverseFileInputStream(Path file, int blockSize)
+            throws IOException {
+        this(file == null ? null : file.toFile(), blockSize);
+    }
 
     @Override
     public int read() throws IOException {
-        if (currentPositionInFile <= 0) {
+        if (currentPositionInBuffer == 0 && !readPreviousBlock()) {
             return -1;
         }
-        if (--currentPositionInBuffer < 0) {
-            currentPositionInBuffer = buffer.length;
-            long startOfBlock = currentPositionInFile - buffer.length;
-            if (startOfBlock < 0) {
-                currentPositionInBuffer = buffer.length + (int) startOfBlock;
-                startOfBlock = 0;
+        return buffer[--currentPositionInBuffer] & 0xFF; // make it unsigned
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        var total = 0;
+        while (total < len) {
+            if (currentPositionInBuffer == 0 && !readPreviousBlock()) {
+                break;
             }
-            raf.seek(startOfBlock);
-            raf.readFully(buffer, 0, currentPositionInBuffer);
-            return read();
+            var num = Math.min(len - total, currentPositionInBuffer);
+            var from = currentPositionInBuffer - 1;
+            var to = off + total;
+            for (var i = 0; i < num; i++) {
+                b[to + i] = buffer[from - i];
+            }
+            currentPositionInBuffer -= num;
+            total += num;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
         }
-        currentPositionInFile--;
-        return buffer[currentPositionInBuffer] & 0xFF; // make it a signed byte
+        var inBuffer = (int) Math.min(n, currentPositionInBuffer);
+        currentPositionInBuffer -= inBuffer;
+        var inFile = Math.min(n - inBuffer, currentPositionInFile);
+        currentPositionInFile -= inFile;
+        return inBuffer + inFile;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE,
+                currentPositionInFile + currentPositionInBuffer);
     }
 
     @Override
     public void close() throws IOException {
-        raf.close();
+        channel.close();
+    }
+
+    private boolean readPreviousBlock() throws IOException {
+        if (currentPositionInFile <= 0) {
+            return false;
+        }
+        var startOfBlock = Math.max(0, currentPositionInFile - buffer.length);
+        var length = (int) (currentPositionInFile - startOfBlock);
+        var bb = ByteBuffer.wrap(buffer, 0, length);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, startOfBlock + bb.position()) == -1) {
+                throw new EOFException("File was truncated while reading.");
+            }
+        }
+        currentPositionInFile = startOfBlock;
+        currentPositionInBuffer = length;
+        return true;
     }
 
     private static void assertFile(File file) throws IOException {
@@ -0,0 +1,77 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.io;
+
+import java.util.Collection;
+import java.util.Comparator;
+
+import com.norconex.commons.lang.io.CachedStreamFactory.MemoryTracker;
+
+/**
+ * <p>
+ * Selects which cached stream should spill its memory cache to file when
+ * there is not enough memory left in a {@link CachedStreamFactory} pool
+ * for a stream to grow.
+ * </p>
+ * <p>
+ * Only streams still growing in memory (i.e., on their first read for
+ * {@link CachedInputStream}, or not yet closed for
+ * {@link CachedOutputStream}) are candidates. A stream other than the one
+ * requesting memory is spilled the next time it grows, while the requesting
+ * stream waits for memory up to the factory maximum memory wait.
+ * </p>
+ * @since 3.0.0
+ * @see CachedStreamFactory#setSpillPolicy(SpillPolicy)
+ */
+@FunctionalInterface
+public interface SpillPolicy {
+
+    /**
+     * The stream requesting memory spills (default).
+     */
+    SpillPolicy REQUESTER = (requester, candidates) -> requester;
+    /**
+     * The stream using the most memory spills.
+     */
+    SpillPolicy LARGEST = (requester, candidates) -> candidates.stream()
+            .max(Comparator.comparingLong(MemoryTracker::getMemorySize))
+            .orElse(requester);
+    /**
+     * The first stream created spills.
+     */
+    SpillPolicy OLDEST = (requester, candidates) -> candidates.stream()
+            .min(Comparator.comparingLong(MemoryTracker::getCreationTime))
+            .orElse(requester);
+    /**
+     * The stream that has not grown for the longest time spills.
+     */
+    SpillPolicy LEAST_RECENTLY_USED = (requester, candidates) ->
+            candidates.stream()
+                .min(Comparator.comparingLong(
+                        MemoryTracker::getLastAccessTime))
+                .orElse(requester);
+
+    /**
+     * Selects the stream that should spill to file.
+     * @param requester memory tracker of the stream requesting memory
+     * @param candidates memory trackers of streams still growing in memory,
+     *     which may include the requester
+     * @return memory tracker of the stream to spill, or <code>null</code>
+     *     to wait for memory to be released by other means (e.g., streams
+     *     being disposed)
+     */
+    MemoryTracker select(
+            MemoryTracker requester, Collection<MemoryTracker> candidates);
+}
@@ -1,4 +1,4 @@
-/* Copyright 2015-2020 Norconex Inc.
+/* Copyright 2015-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,11 +17,16 @@ package com.norconex.commons.lang.io;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +39,13 @@ import org.slf4j.LoggerFactory;
  * The default maximum number of characters to be read before splitting
  * is 10 millions. Passing <code>-1</code> as the <code>maxReadSize</code>
  * will disable reading in batch and will read the entire text all at once.
+ * <p>
+ * Text is read in an internal buffer reused between reads, grown only as
+ * needed.
+ * Use {@link #readChunk()} instead of {@link #readText()} to get each
+ * chunk of text without creating a new string, or {@link #stream()}
+ * to process chunks as a stream, possibly in parallel.
+ * </p>
  * @since 1.6.0
  */
 public class TextReader extends Reader {
@@ -42,22 +54,22 @@ public class TextReader extends Reader {
 
     public static final int DEFAULT_MAX_READ_SIZE = 10000000;
 
+    private static final int MIN_BUFFER_SIZE = 8192;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
     private final BufferedReader reader;
     private final int maxReadSize;
     private final boolean removeTrailingDelimiter;
-    private final StringBuilder buffer = new StringBuilder();
-
-    private static final int PATTERN_FLAGS =
-            Pattern.DOTALL | Pattern.UNICODE_CHARACTER_CLASS;
 
-    private static final Pattern PARAGRAPH_PATTERN = Pattern.compile(
-            "^.*(\\p{javaWhitespace}*[\\n\\r]\\p{javaWhitespace}*?"
-          + "[\\n\\r]\\p{javaWhitespace}*)", PATTERN_FLAGS);
+    // Unconsumed text is from "start" (inclusive) to "end" (exclusive).
+    private char[] buffer = new char[0];
+    private int start;
+    private int end;
+    private boolean eof;
 
-    private static final Pattern SENTENCE_PATTERN = Pattern.compile(
-            "^.*[\\.\\?\\!](\\p{javaWhitespace}+|$)", PATTERN_FLAGS);
-    private static final Pattern WORD_PATTERN = Pattern.compile(
-            "^.*(\\p{javaWhitespace}+)", PATTERN_FLAGS);
+    // Last break found: trailing delimiter start and end.
+    private int delimStart;
+    private int delimEnd;
 
     /**
      * Create a new text reader, reading a maximum of 10 million characters
@@ -91,6 +103,13 @@ public class TextReader extends Reader {
 
     @Override
     public int read(char[] cbuf, int off, int len) throws IOException {
+        // Text already buffered by readText() is returned first.
+        if (start < end) {
+            var num = Math.min(len, end - start);
+            System.arraycopy(buffer, start, cbuf, off, num);
+            start += num;
+            return num;
+        }
         return reader.read(cbuf, off, len);
     }
 
@@ -102,88 +121,353 @@ public class TextReader extends Reader {
      * @throws IOException problem reading text.
      */
     public String readText() throws IOException {
-        if (maxReadSize == -1) {
-            String txt = IOUtils.toString(reader);
-            if (StringUtils.isEmpty(txt)) {
+        var chunk = readChunk();
+        return chunk == null ? null : chunk.toString();
+    }
+
+    /**
+     * Reads the next chunk of text the same way as {@link #readText()},
+     * but returns it as a read-only view of this reader internal buffer
+     * instead of a new string.
+     * The returned buffer content is only valid until this reader is
+     * read again. Copy it (e.g., with <code>toString()</code>) if you need
+     * to keep it longer.
+     * @return text read, or <code>null</code> if there is no more text
+     * @throws IOException problem reading text.
+     * @since 3.0.0
+     */
+    public CharBuffer readChunk() throws IOException {
+        fill();
+        if (start == end) {
+            return null;
+        }
+
+        // Return all if we reached the end.
+        if (eof || maxReadSize == -1 || isEndOfStream()) {
+            return chunk(end, end);
+        }
+
+        switch (findBreak()) {
+            case PARAGRAPH:
+                LOG.debug("Reader text split after paragraph.");
+                return chunk(delimStart, delimEnd);
+            case SENTENCE:
+                LOG.debug("Reader text split after sentence.");
+                return chunk(delimStart, delimEnd);
+            case WORD:
+                LOG.debug("Reader text split after word.");
+                return chunk(delimStart, delimEnd);
+            default:
+                LOG.debug("Reader text split after maxReadSize.");
+                return chunk(end, end);
+        }
+    }
+
+    /**
+     * Gets a stream of text chunks read the same way as with
+     * {@link #readText()}, keeping the order they were read in.
+     * Same as invoking <code>stream(true)</code>.
+     * @return stream of text chunks
+     * @since 3.0.0
+     * @see #stream(boolean)
+     */
+    public Stream<String> stream() {
+        return stream(true);
+    }
+
+    /**
+     * <p>
+     * Gets a stream of text chunks read the same way as with
+     * {@link #readText()}. Chunks are only read as the stream is consumed.
+     * Closing the stream closes this reader. Problems reading text are
+     * thrown as {@link UncheckedIOException}.
+     * </p>
+     * <p>
+     * Make the stream parallel to process chunks concurrently.
+     * When <code>ordered</code> is <code>true</code>, the stream
+     * encounter order is the order chunks were read in (e.g., for
+     * {@link Stream#forEachOrdered(Consumer)} or when collecting to a list).
+     * Chunks are then read ahead and handed over to parallel tasks.
+     * To bound how many are held at once, reading ahead waits while as
+     * many chunks as there are available processors are waiting for a
+     * task to process them.
+     * When <code>false</code>, parallel tasks each read the next chunk
+     * only once done with their previous one, so no more chunks are held
+     * than there are tasks (up to the number of available processors),
+     * but encounter order is undefined.
+     * Either way, a sequential stream returns chunks in order.
+     * </p>
+     * @param ordered whether to keep chunks order in parallel streams
+     * @return stream of text chunks
+     * @since 3.0.0
+     */
+    public Stream<String> stream(boolean ordered) {
+        var processors = Runtime.getRuntime().availableProcessors();
+        var spliterator = ordered
+                ? new OrderedChunks(new Semaphore(processors))
+                : new UnorderedChunks(new AtomicInteger(processors - 1));
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String nextText() {
+        synchronized (lock) {
+            try {
+                return readText();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Each split is the next chunk, in reading order. Splits are read
+    // ahead, each taking a permit given back once a task picks it up.
+    private class OrderedChunks implements Spliterator<String> {
+        private final Semaphore readAhead;
+        private OrderedChunks(Semaphore readAhead) {
+            this.readAhead = readAhead;
+        }
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            var text = nextText();
+            if (text == null) {
+                return false;
+            }
+            action.accept(text);
+            return true;
+        }
+        @Override
+        public Spliterator<String> trySplit() {
+            try {
+                // lets the pool add a thread while waiting, if needed
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        readAhead.acquire();
+                        return true;
+                    }
+                    @Override
+                    public boolean isReleasable() {
+                        return readAhead.tryAcquire();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // remaining chunks are processed without splitting
                 return null;
             }
-            return txt;
+            var text = nextText();
+            if (text == null) {
+                readAhead.release();
+                return null;
+            }
+            return new ReadAheadChunk(text, readAhead);
+        }
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
         }
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
 
-        char[] text = new char[maxReadSize - buffer.length()];
-        int num = reader.read(text);
-        if (num == -1) {
+    // A chunk read ahead. Its permit is given back the first time it is
+    // accessed. Stream tasks get their split size first thing, even when
+    // cancelled, so permits are not lost when a chunk is never consumed.
+    private static class ReadAheadChunk implements Spliterator<String> {
+        private String text;
+        private Semaphore readAhead;
+        private ReadAheadChunk(String text, Semaphore readAhead) {
+            this.text = text;
+            this.readAhead = readAhead;
+        }
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            release();
+            if (text == null) {
+                return false;
+            }
+            var t = text;
+            text = null;
+            action.accept(t);
+            return true;
+        }
+        @Override
+        public Spliterator<String> trySplit() {
             return null;
         }
+        @Override
+        public long estimateSize() {
+            release();
+            return text == null ? 0 : 1;
+        }
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+        }
+        private void release() {
+            if (readAhead != null) {
+                readAhead.release();
+                readAhead = null;
+            }
+        }
+    }
 
-        buffer.append(String.valueOf(text, 0, num));
-
-        // Return all if we reached the end.
-        reader.mark(1);
-        if (reader.read() == -1) {
-            String t = buffer.toString();
-            buffer.setLength(0);
-            reader.reset();
-            return t;
+    // Each split shares this reader with other splits, reading chunks as
+    // it needs them.
+    private class UnorderedChunks implements Spliterator<String> {
+        private final AtomicInteger splitsLeft;
+        private UnorderedChunks(AtomicInteger splitsLeft) {
+            this.splitsLeft = splitsLeft;
         }
-        reader.reset();
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            var text = nextText();
+            if (text == null) {
+                return false;
+            }
+            action.accept(text);
+            return true;
+        }
+        @Override
+        public Spliterator<String> trySplit() {
+            if (splitsLeft.getAndDecrement() <= 0) {
+                return null;
+            }
+            return new UnorderedChunks(splitsLeft);
+        }
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+        @Override
+        public int characteristics() {
+            return NONNULL;
+        }
+    }
 
-        Matcher m;
+    private CharBuffer chunk(int dStart, int dEnd) {
+        var chunkStart = start;
+        // When removed, the delimiter is kept for the next chunk, unless
+        // this chunk would be empty.
+        var chunkEnd = removeTrailingDelimiter && dStart > start
+                ? dStart : dEnd;
+        start = chunkEnd;
+        return CharBuffer.wrap(buffer, chunkStart, chunkEnd - chunkStart)
+                .slice()
+                .asReadOnlyBuffer();
+    }
 
-        // Try breaking at paragraph:
-        m = PARAGRAPH_PATTERN.matcher(buffer);
-        if(m.find()) {
-            int mStart = m.start(1);
-            int mEnd = m.end(1);
-            int substringEnd = mEnd;
-            if (removeTrailingDelimiter) {
-                substringEnd = mStart;
-            }
-            String t = buffer.substring(0, substringEnd);
-            buffer.delete(0, substringEnd);
-            LOG.debug("Reader text split after paragraph.");
-            return t;
-        }
-
-        // Try breaking at sentence:
-        m = SENTENCE_PATTERN.matcher(buffer);
-        if(m.find()) {
-            int mStart = m.start(1);
-            int mEnd = m.end(1);
-            int substringEnd = mEnd;
-            if (removeTrailingDelimiter) {
-                substringEnd = mStart;
+    // Reads until the buffered text reaches the maximum read size or
+    // the end of stream is reached.
+    private void fill() throws IOException {
+        var max = maxReadSize == -1 ? MAX_BUFFER_SIZE : maxReadSize;
+        while (!eof && end - start < max) {
+            if (end == buffer.length) {
+                makeRoom(max);
             }
-            String t = buffer.substring(0, substringEnd);
-            buffer.delete(0, substringEnd);
-            LOG.debug("Reader text split after sentence.");
-            return t;
-        }
-
-        // Try breaking at word:
-        m = WORD_PATTERN.matcher(buffer);
-        if(m.find()) {
-            int mStart = m.start(1);
-            int mEnd = m.end(1);
-            int substringEnd = mEnd;
-            if (removeTrailingDelimiter) {
-                substringEnd = mStart;
+            var num = reader.read(buffer, end,
+                    Math.min(buffer.length - end, max - (end - start)));
+            if (num == -1) {
+                eof = true;
+            } else {
+                end += num;
             }
-            String t = buffer.substring(0, substringEnd);
-            buffer.delete(0, substringEnd);
-            LOG.debug("Reader text split after word.");
-            return t;
         }
+    }
 
+    // Moving unconsumed text at the beginning of the buffer when it is
+    // no larger than consumed text keeps copying linear overall. Else,
+    // the buffer grows, up to twice the maximum read size.
+    private void makeRoom(int max) {
+        var length = end - start;
+        if (start > 0 && start >= length) {
+            System.arraycopy(buffer, start, buffer, 0, length);
+        } else {
+            var newSize = (int) Math.min(MAX_BUFFER_SIZE, Math.min(
+                    2L * max, Math.max(2L * buffer.length, MIN_BUFFER_SIZE)));
+            var newBuffer = new char[newSize];
+            System.arraycopy(buffer, start, newBuffer, 0, length);
+            buffer = newBuffer;
+        }
+        start = 0;
+        end = length;
+    }
 
-        String t = buffer.toString();
-        buffer.setLength(0);
-        LOG.debug("Reader text split after maxReadSize.");
-        return t;
+    private boolean isEndOfStream() throws IOException {
+        reader.mark(1);
+        if (reader.read() == -1) {
+            eof = true;
+            return true;
+        }
+        reader.reset();
+        return false;
     }
 
-    @Override
-    public void close() throws IOException {
-        reader.close();
+    // Scans backward from the end of buffered text for the last paragraph
+    // break, remembering the last sentence and word breaks found along the
+    // way in case there are no paragraph breaks.
+    // A paragraph break is a whitespace sequence with at least two
+    // carriage return or line feed characters, its delimiter starting at the
+    // second-to-last one. A sentence break is a period, question mark, or
+    // exclamation mark followed by whitespace (or the end of buffered text).
+    // A word break is the last whitespace character.
+    private Break findBreak() {
+        var sentenceStart = -1;
+        var sentenceEnd = -1;
+        var wordStart = -1;
+        var spaceEnd = -1;
+        var newLines = 0;
+        for (var i = end - 1; i >= start; i--) {
+            var ch = buffer[i];
+            if (Character.isWhitespace(ch)) {
+                if (i + 1 == end || !Character.isWhitespace(buffer[i + 1])) {
+                    spaceEnd = i + 1;
+                    newLines = 0;
+                }
+                if (wordStart == -1) {
+                    wordStart = i;
+                }
+                if ((ch == '\n' || ch == '\r') && ++newLines == 2) {
+                    delimStart = i;
+                    delimEnd = spaceEnd;
+                    return Break.PARAGRAPH;
+                }
+            } else if (sentenceStart == -1
+                    && (ch == '.' || ch == '?' || ch == '!')) {
+                if (i + 1 == end) {
+                    sentenceStart = end;
+                    sentenceEnd = end;
+                } else if (Character.isWhitespace(buffer[i + 1])) {
+                    sentenceStart = i + 1;
+                    sentenceEnd = spaceEnd;
+                }
+            }
+        }
+        if (sentenceStart != -1) {
+            delimStart = sentenceStart;
+            delimEnd = sentenceEnd;
+            return Break.SENTENCE;
+        }
+        if (wordStart != -1) {
+            delimStart = wordStart;
+            delimEnd = wordStart + 1;
+            return Break.WORD;
+        }
+        return Break.NONE;
     }
-}
\ No newline at end of file
+
+    private enum Break { PARAGRAPH, SENTENCE, WORD, NONE }
+}
@@ -0,0 +1,216 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Output stream writing to a file channel from background threads.
+ * Written bytes are gathered into segments, and each full segment is
+ * written by a task submitted to an executor, at the file position it
+ * belongs to (so tasks can run in any order). Once the maximum number of
+ * pending segments is reached, writing blocks until one is written.
+ * </p>
+ * <p>
+ * {@link #flush()} submits the current segment and waits for all pending
+ * ones to be written. Write failures are reported by the next method
+ * call. Closing this stream closes the channel. Not thread-safe.
+ * </p>
+ * @since 3.0.0
+ */
+final class WriteBehindOutputStream extends OutputStream {
+
+    static final int SEGMENT_SIZE = CacheFile.BLOCK_SIZE;
+
+    private final FileChannel channel;
+    private final Executor executor;
+    private final int maxPending;
+    private final Semaphore pending;
+    private final BlockingQueue<byte[]> freeSegments;
+    private final AtomicReference<IOException> error =
+            new AtomicReference<>();
+
+    private byte[] segment;
+    private int segmentCount;
+    // file position of next segment
+    private long position;
+
+    WriteBehindOutputStream(
+            FileChannel channel, Executor executor, int maxPending) {
+        this.channel = channel;
+        this.executor = executor;
+        this.maxPending = maxPending;
+        pending = new Semaphore(maxPending);
+        freeSegments = new ArrayBlockingQueue<>(maxPending);
+    }
+
+    /**
+     * Writes a memory cache at the beginning of the file from a background
+     * thread, then disposes of it and releases its memory.
+     * Must be invoked before anything else is written.
+     * @param memCache memory cache
+     * @param tracker memory tracker to release once written
+     * @throws IOException problem writing
+     */
+    void writeBehind(ByteArrayOutputStream memCache,
+            CachedStreamFactory.MemoryTracker tracker) throws IOException {
+        var length = memCache.size();
+        submit(() -> {
+            try {
+                channel.position(0);
+                memCache.writeTo(channel);
+            } finally {
+                memCache.dispose();
+                tracker.release();
+            }
+        });
+        position = length;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureSegment();
+        segment[segmentCount++] = (byte) b;
+        if (segmentCount == SEGMENT_SIZE) {
+            submitSegment();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        var written = 0;
+        while (written < len) {
+            ensureSegment();
+            var num = Math.min(len - written, SEGMENT_SIZE - segmentCount);
+            System.arraycopy(b, off + written, segment, segmentCount, num);
+            segmentCount += num;
+            written += num;
+            if (segmentCount == SEGMENT_SIZE) {
+                submitSegment();
+            }
+        }
+    }
+
+    /**
+     * Writes buffered bytes and waits for all pending segments to be
+     * written.
+     * @throws IOException problem writing or interrupted while waiting
+     */
+    @Override
+    public void flush() throws IOException {
+        if (segmentCount > 0) {
+            submitSegment();
+        }
+        try {
+            pending.acquire(maxPending);
+            pending.release(maxPending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for cache file writes.");
+        }
+        checkError();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            segment = null;
+            freeSegments.clear();
+            channel.close();
+        }
+    }
+
+    private void ensureSegment() throws IOException {
+        checkError();
+        if (segment == null) {
+            var free = freeSegments.poll();
+            segment = free != null ? free : new byte[SEGMENT_SIZE];
+        }
+    }
+
+    private void submitSegment() throws IOException {
+        var buf = segment;
+        var len = segmentCount;
+        var pos = position;
+        segment = null;
+        segmentCount = 0;
+        position += len;
+        submit(() -> {
+            try {
+                var bb = ByteBuffer.wrap(buf, 0, len);
+                while (bb.hasRemaining()) {
+                    channel.write(bb, pos + bb.position());
+                }
+            } finally {
+                freeSegments.offer(buf);
+            }
+        });
+    }
+
+    private void submit(IOTask task) throws IOException {
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for cache file writes.");
+        }
+        Runnable run = () -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                error.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                // would otherwise be lost, leaving the cache file incomplete
+                error.compareAndSet(null, new IOException(e));
+            } finally {
+                pending.release();
+            }
+        };
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            // write from this thread instead
+            run.run();
+        }
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        var e = error.get();
+        if (e != null) {
+            throw new IOException("Could not write to cache file.", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOTask {
+        void run() throws IOException;
+    }
+}
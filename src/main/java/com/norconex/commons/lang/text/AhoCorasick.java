@@ -0,0 +1,118 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.text;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * Aho-Corasick automaton finding, in a single pass, which of many
+ * literal strings occur in a given text.
+ * @since 3.0.0
+ */
+final class AhoCorasick {
+
+    private final Node root = new Node();
+
+    /**
+     * Builds an automaton for the given literals. Matches are reported
+     * using their index in the supplied list.
+     * @param literals strings to search for
+     */
+    AhoCorasick(List<String> literals) {
+        for (var i = 0; i < literals.size(); i++) {
+            var node = root;
+            for (char ch : literals.get(i).toCharArray()) {
+                node = node.children.computeIfAbsent(ch, c -> new Node());
+            }
+            node.outputs = ArrayUtils.add(node.outputs, i);
+        }
+        linkFailures();
+    }
+
+    /**
+     * Scans the text, reporting the index of each literal found to the
+     * supplied consumer. A literal found more than once is reported
+     * more than once. Scanning stops as soon as the consumer returns
+     * <code>false</code>.
+     * @param text the text to scan
+     * @param consumer receives indices of found literals, returning
+     *     whether to continue scanning
+     */
+    void scan(CharSequence text, IntPredicate consumer) {
+        if (!report(root, consumer)) {
+            return;
+        }
+        var node = root;
+        for (var i = 0; i < text.length(); i++) {
+            var ch = text.charAt(i);
+            var next = node.children.get(ch);
+            while (next == null && node != root) {
+                node = node.failure;
+                next = node.children.get(ch);
+            }
+            node = next == null ? root : next;
+            if (node.outputs.length > 0 && !report(node, consumer)) {
+                return;
+            }
+        }
+    }
+
+    private boolean report(Node node, IntPredicate consumer) {
+        for (int idx : node.outputs) {
+            if (!consumer.test(idx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Breadth-first, so failure targets are always resolved first.
+    // Each node outputs are merged with the ones of its failure node.
+    private void linkFailures() {
+        var queue = new ArrayDeque<Node>();
+        for (Node child : root.children.values()) {
+            child.failure = root;
+            child.outputs = ArrayUtils.addAll(child.outputs, root.outputs);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            var node = queue.poll();
+            for (Map.Entry<Character, Node> en : node.children.entrySet()) {
+                var ch = en.getKey();
+                var child = en.getValue();
+                var f = node.failure;
+                while (f != root && !f.children.containsKey(ch)) {
+                    f = f.failure;
+                }
+                child.failure = f.children.getOrDefault(ch, root);
+                child.outputs = ArrayUtils.addAll(
+                        child.outputs, child.failure.outputs);
+                queue.add(child);
+            }
+        }
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private Node failure;
+        private int[] outputs = ArrayUtils.EMPTY_INT_ARRAY;
+    }
+}
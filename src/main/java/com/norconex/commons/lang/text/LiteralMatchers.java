@@ -0,0 +1,134 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.text;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Matching engines not relying on regular expressions, used by
+ * {@link TextMatcher} for the methods that can do without (basic, wildcard,
+ * and csv). Results are the same as the regular expressions
+ * those methods otherwise translate into (with "dotall" enabled).
+ * Case-insensitive comparisons fold each code point the same way
+ * {@link java.util.regex.Pattern#UNICODE_CASE} does.
+ * Supplied text is expected to be non-null.
+ * @since 3.0.0
+ */
+final class LiteralMatchers {
+
+    private LiteralMatchers() {
+    }
+
+    static Predicate<String> basic(
+            String literal, boolean ignoreCase, boolean partial) {
+        if (ignoreCase) {
+            var folded = fold(literal);
+            if (partial) {
+                return t -> fold(t).contains(folded);
+            }
+            return t -> fold(t).equals(folded);
+        }
+        if (partial) {
+            return t -> t.contains(literal);
+        }
+        return literal::equals;
+    }
+
+    static Predicate<String> csv(
+            List<String> literals, boolean ignoreCase, boolean partial) {
+        if (literals.size() == 1) {
+            return basic(literals.get(0), ignoreCase, partial);
+        }
+        if (partial) {
+            var values = literals.stream()
+                    .map(v -> ignoreCase ? fold(v) : v)
+                    .distinct()
+                    .toArray(String[]::new);
+            return t -> {
+                var txt = ignoreCase ? fold(t) : t;
+                for (String v : values) {
+                    if (txt.contains(v)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+        var values = new HashSet<String>();
+        literals.forEach(v -> values.add(ignoreCase ? fold(v) : v));
+        if (ignoreCase) {
+            return t -> values.contains(fold(t));
+        }
+        return values::contains;
+    }
+
+    static Predicate<String> wildcard(
+            String glob, boolean ignoreCase, boolean partial) {
+        var g = partial ? "*" + glob + "*" : glob;
+        if (ignoreCase) {
+            var folded = fold(g);
+            return t -> globMatches(folded, fold(t));
+        }
+        return t -> globMatches(g, t);
+    }
+
+    // Iterative matching with single-star backtracking: linear for most
+    // patterns and never exponential.
+    static boolean globMatches(String glob, String text) {
+        var g = 0;
+        var t = 0;
+        var starG = -1;
+        var starT = -1;
+        while (t < text.length()) {
+            if (g < glob.length()) {
+                var gc = glob.charAt(g);
+                if (gc == '*') {
+                    starG = ++g;
+                    starT = t;
+                    continue;
+                }
+                if (gc == '?') {
+                    g++;
+                    t += Character.charCount(text.codePointAt(t));
+                    continue;
+                }
+                if (gc == text.charAt(t)) {
+                    g++;
+                    t++;
+                    continue;
+                }
+            }
+            if (starG == -1) {
+                return false;
+            }
+            g = starG;
+            starT += Character.charCount(text.codePointAt(starT));
+            t = starT;
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    static String fold(String text) {
+        var b = new StringBuilder(text.length());
+        text.codePoints().forEach(cp -> b.appendCodePoint(
+                Character.toLowerCase(Character.toUpperCase(cp))));
+        return b.toString();
+    }
+}
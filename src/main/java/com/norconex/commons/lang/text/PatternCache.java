@@ -0,0 +1,169 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.text;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * <p>
+ * Process-wide, size-bounded cache of compiled {@link Pattern} instances,
+ * used by {@link Regex} so identical patterns compiled with the same
+ * flags are only compiled once. Patterns are immutable and safe to share
+ * between threads.
+ * </p>
+ * <p>
+ * The maximum number of cached patterns defaults to
+ * {@value #DEFAULT_MAX_SIZE}. It can be changed with the
+ * <code>regex.cache.size</code> system property or
+ * {@link #setMaxSize(int)}. A size of zero disables caching.
+ * When full, the oldest cached patterns are evicted first.
+ * </p>
+ * @since 3.0.0
+ */
+public final class PatternCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final String PROP_MAX_SIZE = "regex.cache.size";
+
+    private static final Map<Key, Pattern> CACHE = new ConcurrentHashMap<>();
+    // insertion order, for eviction
+    private static final Queue<Key> KEYS = new ConcurrentLinkedQueue<>();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private static volatile int maxSize = Math.max(0, NumberUtils.toInt(
+            System.getProperty(PROP_MAX_SIZE), DEFAULT_MAX_SIZE));
+
+    private PatternCache() {
+    }
+
+    /**
+     * Gets the maximum number of patterns kept in cache.
+     * @return maximum cache size
+     */
+    public static int getMaxSize() {
+        return maxSize;
+    }
+    /**
+     * Sets the maximum number of patterns kept in cache. Setting a value
+     * smaller than the current one evicts extra patterns.
+     * A size of zero disables caching.
+     * @param maxSize maximum cache size
+     */
+    public static void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException(
+                    "'maxSize' must not be negative.");
+        }
+        PatternCache.maxSize = maxSize;
+        evictExtras();
+    }
+
+    /**
+     * Gets a snapshot of this cache statistics.
+     * @return statistics
+     */
+    public static Stats getStats() {
+        return new Stats(CACHE.size(), maxSize,
+                HITS.sum(), MISSES.sum(), EVICTIONS.sum());
+    }
+
+    /**
+     * Removes all cached patterns and resets statistics.
+     */
+    public static void clear() {
+        KEYS.clear();
+        CACHE.clear();
+        HITS.reset();
+        MISSES.reset();
+        EVICTIONS.reset();
+    }
+
+    /**
+     * Gets a cached pattern, compiling and caching it if not already
+     * cached.
+     * @param pattern the original pattern string
+     * @param flags all flags used to compile the pattern, including
+     *     those specific to {@link Regex}
+     * @param compiler compiles the pattern when not cached
+     * @return compiled pattern
+     */
+    static Pattern get(String pattern, int flags, Supplier<Pattern> compiler) {
+        if (maxSize == 0) {
+            return compiler.get();
+        }
+        var key = new Key(pattern, flags);
+        var p = CACHE.get(key);
+        if (p != null) {
+            HITS.increment();
+            return p;
+        }
+        MISSES.increment();
+        p = compiler.get();
+        if (CACHE.putIfAbsent(key, p) == null) {
+            KEYS.add(key);
+            evictExtras();
+        }
+        return p;
+    }
+
+    private static void evictExtras() {
+        while (CACHE.size() > maxSize) {
+            var key = KEYS.poll();
+            if (key == null) {
+                return;
+            }
+            if (CACHE.remove(key) != null) {
+                EVICTIONS.increment();
+            }
+        }
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+        private final String pattern;
+        private final int flags;
+        private Key(String pattern, int flags) {
+            this.pattern = pattern;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * Pattern cache statistics.
+     */
+    @Data
+    public static final class Stats {
+        private final int size;
+        private final int maxSize;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+    }
+}
@@ -342,6 +342,10 @@ public class Regex {
      * or for {@link #trim} and {@link #matchEmpty} support,
      * use {@link #matcher(String, CharSequence)} instead.
      * </p>
+     * <p>
+     * <b>Since 3.0.0</b>, compiled patterns are shared via
+     * {@link PatternCache}.
+     * </p>
      * @param pattern the pattern to compile
      * @return compiled pattern
      * @throws IllegalArgumentException if pattern is <code>null</code>
@@ -351,22 +355,20 @@ public class Regex {
         if (pattern == null) {
             throw new IllegalArgumentException("Pattern cannot be null.");
         }
-        var ignoreMarks = false;
-        var f = 0;
+        var allFlags = 0;
         for (int i : flags) {
-            if (i == UNICODE_MARK_INSENSTIVE_FLAG) {
-                ignoreMarks = true;
-            } else {
-                f |= i;
-            }
+            allFlags |= i;
         }
-
-        var p = pattern;
-        if (ignoreMarks) {
-            p = Normalizer.normalize(p, Form.NFD)
-                    .replaceAll("(\\w)(\\p{M}*)", "$1\\\\p{M}*");
-        }
-        return Pattern.compile(p, f);
+        var ignoreMarks = (allFlags & UNICODE_MARK_INSENSTIVE_FLAG) != 0;
+        var f = allFlags & ~UNICODE_MARK_INSENSTIVE_FLAG;
+        return PatternCache.get(pattern, allFlags, () -> {
+            var p = pattern;
+            if (ignoreMarks) {
+                p = Normalizer.normalize(p, Form.NFD)
+                        .replaceAll("(\\w)(\\p{M}*)", "$1\\\\p{M}*");
+            }
+            return Pattern.compile(p, f);
+        });
     }
 
     /**
@@ -422,24 +424,58 @@ public class Regex {
      */
     @JsonIgnore
     public Matcher matcher(String pattern, CharSequence text) {
-        var p = pattern;
+        var t = toMatchableText(text);
+        if (t.isEmpty()) {
+            return compile(emptyTextPattern()).matcher(t);
+        }
+        return compile(pattern).matcher(t);
+    }
+    /**
+     * Same as {@link #matcher(String, CharSequence)}, but using an
+     * already compiled pattern (expected to have been compiled by this
+     * instance) for non-empty text.
+     * @param compiledPattern the compiled pattern to match
+     * @param text the text to match
+     * @return matcher
+     */
+    Matcher matcher(Pattern compiledPattern, CharSequence text) {
+        var t = toMatchableText(text);
+        if (t.isEmpty()) {
+            return compile(emptyTextPattern()).matcher(t);
+        }
+        return compiledPattern.matcher(t);
+    }
+
+    // Trimmed if applicable, never null.
+    String toPreparedText(CharSequence text) {
         var t = Objects.toString(text, null);
         if (trim) {
             t = StringUtils.trim(t);
         }
-        if (t == null) {
-            t = StringUtils.EMPTY;
-        }
-        if (matchEmpty && StringUtils.isEmpty(t)) {
-            p = ".*";
-        }
-        if (!matchEmpty && StringUtils.isEmpty(t)) {
-            p = "(?=x)(?!x)"; // never matches
+        return t == null ? StringUtils.EMPTY : t;
+    }
+
+    // Trimmed if applicable, decomposed when ignoring diacritical marks,
+    // never null.
+    String toMatchableText(CharSequence text) {
+        var t = toPreparedText(text);
+        if (!t.isEmpty() && flags.contains(UNICODE_MARK_INSENSTIVE_FLAG)) {
+            t = toNFD(t);
         }
-        if (flags.contains(UNICODE_MARK_INSENSTIVE_FLAG)) {
-            t = Normalizer.normalize(t, Form.NFD);
+        return t;
+    }
+
+    // Normalizing creates a copy, even when already normalized (e.g.,
+    // text without diacritical marks), which is checked without one.
+    static String toNFD(String text) {
+        if (Normalizer.isNormalized(text, Form.NFD)) {
+            return text;
         }
-        return compile(p).matcher(t);
+        return Normalizer.normalize(text, Form.NFD);
+    }
+
+    private String emptyTextPattern() {
+        return matchEmpty ? ".*" : "(?=x)(?!x)"; // the latter never matches
     }
 
     public RegexFieldValueExtractor createKeyValueExtractor() {
@@ -52,7 +52,14 @@ import lombok.ToString;
  * Match/replace methods are case-sensitive by default.
  * </p>
  * <p>
- * This class is not thread-safe.
+ * <b>Since 3.0.0</b>, matching with BASIC, CSV, or WILDCARD methods
+ * no longer involves regular expressions, unless diacritical marks are
+ * ignored. Replacing always does.
+ * </p>
+ * <p>
+ * This class is not thread-safe. Once configured, it is safe to use
+ * for matching/replacing from multiple threads, as long as it is no longer
+ * modified.
  * </p>
  *
  * <h3>Empty and <code>null</code> values</h3>
@@ -129,6 +136,11 @@ public class TextMatcher implements
             public String toMatchExpression(TextMatcher tm) {
                 return Regex.escape(Objects.toString(tm.pattern, ""));
             }
+            @Override
+            public Predicate<String> toLiteralMatcher(TextMatcher tm) {
+                return LiteralMatchers.basic(Objects.toString(
+                        tm.pattern, ""), tm.ignoreCase, tm.partial);
+            }
         }),
         CSV(new MethodStrategy() {
             @Override
@@ -141,6 +153,11 @@ public class TextMatcher implements
                         .split("\\s*,\\s*")).map(Regex::escape)
                                 .collect(Collectors.joining("|")).trim();
             }
+            @Override
+            public Predicate<String> toLiteralMatcher(TextMatcher tm) {
+                return LiteralMatchers.csv(
+                        tm.toLiterals(), tm.ignoreCase, tm.partial);
+            }
         }),
         WILDCARD(new MethodStrategy() {
             @Override
@@ -163,6 +180,11 @@ public class TextMatcher implements
                 }
                 return b.toString();
             }
+            @Override
+            public Predicate<String> toLiteralMatcher(TextMatcher tm) {
+                return LiteralMatchers.wildcard(Objects.toString(
+                        tm.pattern, ""), tm.ignoreCase, tm.partial);
+            }
         }),
         REGEX(new MethodStrategy() {
             @Override
@@ -174,6 +196,10 @@ public class TextMatcher implements
             public String toMatchExpression(TextMatcher tm) {
                 return Objects.toString(tm.pattern, "");
             }
+            @Override
+            public Predicate<String> toLiteralMatcher(TextMatcher tm) {
+                return null;
+            }
         });
 
         private final MethodStrategy ms;
@@ -186,6 +212,8 @@ public class TextMatcher implements
     private interface MethodStrategy {
         String toMatchExpression(TextMatcher tm);
         String toQuotedReplacement(String text);
+        // null if regular expressions are required for matching
+        Predicate<String> toLiteralMatcher(TextMatcher tm);
     }
 
     private Method method = Method.BASIC;
@@ -199,6 +227,11 @@ public class TextMatcher implements
     private boolean matchEmpty;
     private boolean negateMatches;
 
+    // Lazily compiled from the above and reset whenever they change.
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient volatile Compiled compiled;
+
     /**
      * Creates a basic matcher.
      */
@@ -244,6 +277,7 @@ public class TextMatcher implements
     }
     public TextMatcher setMethod(Method method) {
         this.method = method;
+        compiled = null;
         return this;
     }
     public TextMatcher withMethod(Method method) {
@@ -255,6 +289,7 @@ public class TextMatcher implements
     }
     public TextMatcher setPartial(boolean partial) {
         this.partial = partial;
+        compiled = null;
         return this;
     }
     public TextMatcher partial() {
@@ -269,6 +304,7 @@ public class TextMatcher implements
     }
     public TextMatcher setPattern(String pattern) {
         this.pattern = pattern;
+        compiled = null;
         return this;
     }
     public TextMatcher withPattern(String pattern) {
@@ -280,6 +316,7 @@ public class TextMatcher implements
     }
     public TextMatcher setIgnoreCase(boolean ignoreCase) {
         this.ignoreCase = ignoreCase;
+        compiled = null;
         return this;
     }
     public TextMatcher ignoreCase() {
@@ -294,6 +331,7 @@ public class TextMatcher implements
     }
     public TextMatcher setIgnoreDiacritic(boolean ignoreDiacritic) {
         this.ignoreDiacritic = ignoreDiacritic;
+        compiled = null;
         return this;
     }
     public TextMatcher ignoreDiacritic() {
@@ -392,6 +430,7 @@ public class TextMatcher implements
      */
     public TextMatcher setMatchEmpty(boolean matchEmpty) {
         this.matchEmpty = matchEmpty;
+        compiled = null;
         return this;
     }
     /**
@@ -435,6 +474,7 @@ public class TextMatcher implements
      */
     public TextMatcher setTrim(boolean trim) {
         this.trim = trim;
+        compiled = null;
         return this;
     }
     /**
@@ -469,6 +509,7 @@ public class TextMatcher implements
             tm.trim = trim;
             tm.matchEmpty = matchEmpty;
             tm.negateMatches = negateMatches;
+            tm.compiled = compiled;
         }
     }
     public void copyFrom(TextMatcher tm) {
@@ -482,6 +523,7 @@ public class TextMatcher implements
             trim = tm.trim;
             matchEmpty = tm.matchEmpty;
             negateMatches = tm.negateMatches;
+            compiled = tm.compiled;
         }
     }
 
@@ -553,8 +595,17 @@ public class TextMatcher implements
         if (getPattern() == null) {
             return true;
         }
-        var m = toRegexMatcher(text);
-        var matches = partial ? m.find() : m.matches();
+        var c = compiled();
+        var t = c.regex.toPreparedText(text);
+        boolean matches;
+        if (t.isEmpty()) {
+            matches = matchEmpty;
+        } else if (c.literalMatcher != null) {
+            matches = c.literalMatcher.test(t);
+        } else {
+            var m = c.pattern.matcher(c.regex.toMatchableText(t));
+            matches = partial ? m.find() : m.matches();
+        }
         if (negateMatches) {
             matches = !matches;
         }
@@ -604,27 +655,34 @@ public class TextMatcher implements
      * @return matcher
      */
     public Matcher toRegexMatcher(CharSequence text) {
-        return new Regex(safeMethod().ms.toMatchExpression(this))
-                .dotAll()
-                .setIgnoreCase(ignoreCase)
-                .setIgnoreDiacritic(ignoreDiacritic)
-                .setTrim(trim)
-                .setMatchEmpty(matchEmpty)
-                .matcher(text);
+        var c = compiled();
+        return c.regex.matcher(c.pattern, text);
     }
     /**
      * Compiles this text matcher to create a regular expression
-     * {@link Pattern}.
+     * {@link Pattern}. <b>Since 3.0.0</b>, the compiled pattern is
+     * cached until this text matcher configuration changes.
      * @return pattern
      */
     public Pattern toRegexPattern() {
-        return new Regex(safeMethod().ms.toMatchExpression(this))
-                .dotAll()
-                .setIgnoreCase(ignoreCase)
-                .setIgnoreDiacritic(ignoreDiacritic)
-                .setTrim(trim)
-                .setMatchEmpty(matchEmpty)
-                .compile();
+        return compiled().pattern;
+    }
+
+    private Compiled compiled() {
+        var c = compiled;
+        if (c == null) {
+            var regex = new Regex(safeMethod().ms.toMatchExpression(this))
+                    .dotAll()
+                    .setIgnoreCase(ignoreCase)
+                    .setIgnoreDiacritic(ignoreDiacritic)
+                    .setTrim(trim)
+                    .setMatchEmpty(matchEmpty);
+            // diacritic-insensitive matching requires regular expressions
+            c = new Compiled(regex, regex.compile(), ignoreDiacritic
+                    ? null : safeMethod().ms.toLiteralMatcher(this));
+            compiled = c;
+        }
+        return c;
     }
 
     /**
@@ -636,6 +694,7 @@ public class TextMatcher implements
      * @return <code>true</code> if an empty list or at least one matcher
      *     matches the text
      * @since 3.0.0
+     * @see TextMatcherSet
      */
     public static boolean anyMatchesOrEmpty(
             List<TextMatcher> matchers, CharSequence text) {
@@ -655,6 +714,7 @@ public class TextMatcher implements
      * @param text the text being tested
      * @return <code>true</code> if at least one matcher matches the text
      * @since 3.0.0
+     * @see TextMatcherSet
      */
     public static boolean anyMatches(
             List<TextMatcher> matchers, CharSequence text) {
@@ -664,7 +724,44 @@ public class TextMatcher implements
         return anyMatchesOrEmpty(matchers, text);
     }
 
+    /**
+     * Gets the literal values this text matcher is made of, when using
+     * the BASIC or CSV method.
+     * @return literal values, or <code>null</code> for other methods
+     */
+    List<String> toLiterals() {
+        if (safeMethod() == Method.BASIC) {
+            return List.of(Objects.toString(pattern, ""));
+        }
+        if (safeMethod() != Method.CSV) {
+            return null; // NOSONAR null means not applicable
+        }
+        // same values as the CSV expression alternatives,
+        // trimmed the same way (as per String#trim())
+        var values = Objects.toString(pattern, "").split("\\s*,\\s*");
+        if (values.length == 0) {
+            values = new String[] { "" };
+        }
+        var last = values.length - 1;
+        values[0] = values[0].replaceFirst("^[\\x00-\\x20]+", "");
+        values[last] = values[last].replaceFirst("[\\x00-\\x20]+$", "");
+        return Arrays.asList(values);
+    }
+
     private Method safeMethod() {
         return ObjectUtils.defaultIfNull(method, Method.BASIC);
     }
+
+    // Immutable once created (the regex is never modified nor exposed).
+    private static final class Compiled {
+        private final Regex regex;
+        private final Pattern pattern;
+        private final Predicate<String> literalMatcher;
+        private Compiled(Regex regex, Pattern pattern,
+                Predicate<String> literalMatcher) {
+            this.regex = regex;
+            this.pattern = pattern;
+            this.literalMatcher = literalMatcher;
+        }
+    }
 }
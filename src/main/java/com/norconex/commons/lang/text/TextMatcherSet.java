@@ -0,0 +1,362 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.norconex.commons.lang.text.TextMatcher.Method;
+
+/**
+ * <p>
+ * An immutable set of {@link TextMatcher} compiled together to find
+ * which ones are matching a given text, without testing each one
+ * sequentially whenever possible. This is most useful with large numbers
+ * of text matchers applied repeatedly, such as reference or field filtering
+ * rules.
+ * </p>
+ * <p>
+ * Matching results are the same as invoking
+ * {@link TextMatcher#matches(CharSequence)} on each text matcher:
+ * </p>
+ * <ul>
+ *   <li>BASIC and CSV text matchers are merged into an Aho-Corasick
+ *       automaton (partial matches) or a hash lookup (whole matches),
+ *       so their number has little influence on matching time.</li>
+ *   <li>REGEX text matchers, and any text matchers ignoring diacritical
+ *       marks, are merged into a single regular expression alternation
+ *       when only checking if any of them match. Those using
+ *       back-references, named groups, comments mode, or quotes not
+ *       ended with <code>\E</code> are matched individually.</li>
+ *   <li>Other text matchers (WILDCARD, negated, or without a pattern)
+ *       are matched individually.</li>
+ * </ul>
+ * <p>
+ * Text matchers are copied on creation. Modifying them afterwards
+ * has no effect on this set.
+ * This class is thread-safe.
+ * </p>
+ * @since 3.0.0
+ */
+public final class TextMatcherSet implements Predicate<CharSequence> {
+
+    // Back-references, named groups, and comments mode (which could
+    // comment out what follows in a merged pattern)
+    private static final Pattern UNMERGEABLE_REGEX = Pattern.compile(
+            "\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z-]*x");
+
+    // original instances, for reporting
+    private final List<TextMatcher> matchers;
+    // copies, for matching
+    private final List<TextMatcher> copies;
+    private final List<LiteralGroup> literalGroups = new ArrayList<>();
+    private final List<RegexGroup> regexGroups = new ArrayList<>();
+    // indices of matchers not in a literal group
+    private final int[] others;
+    // indices of matchers not in any group
+    private final int[] individuals;
+
+    /**
+     * Creates a set of text matchers. <code>null</code> elements are
+     * ignored.
+     * @param matchers the text matchers to compile together
+     */
+    public TextMatcherSet(Collection<TextMatcher> matchers) {
+        this.matchers = matchers == null ? List.of()
+                : matchers.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toUnmodifiableList());
+        copies = this.matchers.stream()
+                .map(TextMatcher::new)
+                .collect(Collectors.toUnmodifiableList());
+
+        Map<List<Boolean>, List<Integer>> literalIdxs = new LinkedHashMap<>();
+        Map<List<Boolean>, List<Integer>> regexIdxs = new LinkedHashMap<>();
+        List<Integer> otherIdxs = new ArrayList<>();
+        for (var i = 0; i < this.matchers.size(); i++) {
+            var tm = copies.get(i);
+            if (!tm.isSet() || tm.isNegateMatches()) {
+                otherIdxs.add(i);
+            } else if (!tm.isIgnoreDiacritic() && tm.toLiterals() != null) {
+                literalIdxs.computeIfAbsent(
+                        List.of(tm.isTrim(), tm.isIgnoreCase()),
+                        k -> new ArrayList<>()).add(i);
+            } else if (tm.isIgnoreDiacritic()
+                    || tm.getMethod() == Method.REGEX) {
+                otherIdxs.add(i);
+                if (isMergeable(tm.getPattern())) {
+                    regexIdxs.computeIfAbsent(
+                            List.of(tm.isTrim(), tm.isIgnoreDiacritic()),
+                            k -> new ArrayList<>()).add(i);
+                }
+            } else {
+                otherIdxs.add(i);
+            }
+        }
+        literalIdxs.forEach((k, idxs) -> literalGroups.add(
+                new LiteralGroup(k.get(0), k.get(1), idxs)));
+        regexIdxs.forEach((k, idxs) -> {
+            try {
+                regexGroups.add(new RegexGroup(k.get(0), k.get(1), idxs));
+            } catch (PatternSyntaxException e) {
+                // valid patterns not valid together: matched individually
+            }
+        });
+        others = otherIdxs.stream().mapToInt(i -> i).toArray();
+        individuals = otherIdxs.stream()
+                .filter(i -> regexGroups.stream().noneMatch(
+                        g -> g.idxs.contains(i)))
+                .mapToInt(i -> i)
+                .toArray();
+    }
+    /**
+     * Creates a set of text matchers. <code>null</code> elements are
+     * ignored.
+     * @param matchers the text matchers to compile together
+     */
+    public TextMatcherSet(TextMatcher... matchers) {
+        this(matchers == null ? null : Arrays.asList(matchers));
+    }
+
+    // An unterminated quote (\Q) would quote what follows in a merged
+    // pattern.
+    private static boolean isMergeable(String regex) {
+        return !UNMERGEABLE_REGEX.matcher(regex).find()
+                && regex.lastIndexOf("\\Q") <= regex.lastIndexOf("\\E");
+    }
+
+    /**
+     * Gets the text matchers part of this set, in their original order.
+     * @return text matchers (never <code>null</code>)
+     */
+    public List<TextMatcher> getMatchers() {
+        return matchers;
+    }
+
+    public int size() {
+        return matchers.size();
+    }
+
+    public boolean isEmpty() {
+        return matchers.isEmpty();
+    }
+
+    /**
+     * Tests that at least one matcher matches the provided text.
+     * Same as invoking {@link #anyMatches(CharSequence)}.
+     * @param text the text being tested
+     * @return <code>true</code> if at least one matcher matches the text
+     */
+    @Override
+    public boolean test(CharSequence text) {
+        return anyMatches(text);
+    }
+
+    /**
+     * Tests that at least one matcher matches the provided text.
+     * An empty set is considered not to match (returns <code>false</code>).
+     * Same as {@link TextMatcher#anyMatches(List, CharSequence)}.
+     * @param text the text being tested
+     * @return <code>true</code> if at least one matcher matches the text
+     */
+    public boolean anyMatches(CharSequence text) {
+        var txt = Objects.toString(text, null);
+        for (LiteralGroup group : literalGroups) {
+            if (!group.matches(txt, true).isEmpty()) {
+                return true;
+            }
+        }
+        for (RegexGroup group : regexGroups) {
+            if (group.anyMatches(txt)) {
+                return true;
+            }
+        }
+        for (int i : individuals) {
+            if (copies.get(i).matches(txt)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests that at least one matcher matches the provided text, treating
+     * an empty set as a match (returning <code>true</code>).
+     * Same as {@link TextMatcher#anyMatchesOrEmpty(List, CharSequence)}.
+     * @param text the text being tested
+     * @return <code>true</code> if an empty set or at least one matcher
+     *     matches the text
+     */
+    public boolean anyMatchesOrEmpty(CharSequence text) {
+        return isEmpty() || anyMatches(text);
+    }
+
+    /**
+     * Gets all text matchers matching the provided text.
+     * @param text the text being tested
+     * @return matching text matchers, in their original order
+     *     (never <code>null</code>)
+     */
+    public List<TextMatcher> matching(CharSequence text) {
+        var txt = Objects.toString(text, null);
+        var hits = new BitSet(matchers.size());
+        for (LiteralGroup group : literalGroups) {
+            hits.or(group.matches(txt, false));
+        }
+        for (int i : others) {
+            if (copies.get(i).matches(txt)) {
+                hits.set(i);
+            }
+        }
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return hits.stream()
+                .mapToObj(matchers::get)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    @Override
+    public String toString() {
+        return TextMatcherSet.class.getSimpleName() + matchers;
+    }
+
+    private static String prepare(String text, boolean trim) {
+        var t = trim ? StringUtils.trim(text) : text;
+        return t == null ? StringUtils.EMPTY : t;
+    }
+
+    // BASIC and CSV matchers sharing the same text preparation.
+    private final class LiteralGroup {
+        private final boolean trim;
+        private final boolean ignoreCase;
+        private final BitSet matchEmpties = new BitSet();
+        // whole-text literals, with indices of the matchers having them
+        private final Map<String, int[]> wholes = new HashMap<>();
+        // partial-text literals, indexed the same as the automaton ones
+        private final List<Integer> partialOwners = new ArrayList<>();
+        private final AhoCorasick partials;
+
+        private LiteralGroup(
+                boolean trim, boolean ignoreCase, List<Integer> idxs) {
+            this.trim = trim;
+            this.ignoreCase = ignoreCase;
+            List<String> partialLiterals = new ArrayList<>();
+            for (Integer i : idxs) {
+                var tm = copies.get(i);
+                if (tm.isMatchEmpty()) {
+                    matchEmpties.set(i);
+                }
+                for (String literal : tm.toLiterals()) {
+                    var lit = ignoreCase
+                            ? LiteralMatchers.fold(literal) : literal;
+                    if (tm.isPartial()) {
+                        partialLiterals.add(lit);
+                        partialOwners.add(i);
+                    } else {
+                        wholes.merge(lit, new int[] { i }, ArrayUtils::addAll);
+                    }
+                }
+            }
+            partials = partialLiterals.isEmpty()
+                    ? null : new AhoCorasick(partialLiterals);
+        }
+
+        private BitSet matches(String text, boolean firstOnly) {
+            var t = prepare(text, trim);
+            if (t.isEmpty()) {
+                return (BitSet) matchEmpties.clone();
+            }
+            if (ignoreCase) {
+                t = LiteralMatchers.fold(t);
+            }
+            var hits = new BitSet();
+            for (int i : wholes.getOrDefault(t, ArrayUtils.EMPTY_INT_ARRAY)) {
+                hits.set(i);
+            }
+            if (partials != null && !(firstOnly && !hits.isEmpty())) {
+                partials.scan(t, idx -> {
+                    hits.set(partialOwners.get(idx));
+                    return !firstOnly;
+                });
+            }
+            return hits;
+        }
+    }
+
+    // Regular expression matchers sharing the same text preparation,
+    // merged into a single alternation.
+    private final class RegexGroup {
+        private final boolean trim;
+        private final boolean ignoreDiacritic;
+        private final List<Integer> idxs;
+        private final boolean anyMatchEmpty;
+        private final Pattern pattern;
+
+        private RegexGroup(
+                boolean trim, boolean ignoreDiacritic, List<Integer> idxs) {
+            this.trim = trim;
+            this.ignoreDiacritic = ignoreDiacritic;
+            this.idxs = idxs;
+            anyMatchEmpty = idxs.stream().anyMatch(
+                    i -> copies.get(i).isMatchEmpty());
+            pattern = Pattern.compile(idxs.stream()
+                    .map(i -> toAlternative(copies.get(i)))
+                    .collect(Collectors.joining("|")));
+        }
+
+        private boolean anyMatches(String text) {
+            var t = prepare(text, trim);
+            if (t.isEmpty()) {
+                return anyMatchEmpty;
+            }
+            return pattern.matcher(
+                    ignoreDiacritic ? Regex.toNFD(t) : t).find();
+        }
+
+        // Whole matches are anchored to the text boundaries so all
+        // alternatives can be evaluated with Matcher#find().
+        private String toAlternative(TextMatcher tm) {
+            var p = tm.toRegexPattern();
+            var flags = new StringBuilder();
+            if ((p.flags() & Pattern.CASE_INSENSITIVE) != 0) {
+                flags.append('i');
+            }
+            if ((p.flags() & Pattern.UNICODE_CASE) != 0) {
+                flags.append('u');
+            }
+            if ((p.flags() & Pattern.DOTALL) != 0) {
+                flags.append('s');
+            }
+            var alt = "(?" + flags + ":" + p.pattern() + ")";
+            return tm.isPartial() ? alt : "\\A" + alt + "\\z";
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * <p>
+ * Evaluates simple relative XPath expressions by walking the DOM directly,
+ * without the XPath engine. Supported expressions are made of element
+ * names separated by slashes, optionally ending with an attribute
+ * (e.g., <code>a</code>, <code>a/b</code>, <code>@c</code>,
+ * <code>a/b/@c</code>). Names must not have a prefix.
+ * </p>
+ * <p>
+ * Results are the same as XPath's, in document order. To guarantee it,
+ * evaluation gives up (returning <code>null</code>) when it meets nodes
+ * XPath could match differently: elements or attributes with a namespace
+ * or a prefix, namespace declarations, and entity references.
+ * Callers are then expected to use XPath instead.
+ * </p>
+ * @since 3.0.0
+ */
+final class SimpleXPath {
+
+    private final String[] elementNames;
+    // null if not selecting an attribute
+    private final String attributeName;
+
+    private SimpleXPath(String[] elementNames, String attributeName) {
+        this.elementNames = elementNames;
+        this.attributeName = attributeName;
+    }
+
+    /**
+     * Parses an XPath expression, if simple.
+     * @param expression XPath expression
+     * @return simple XPath, or <code>null</code> if not a simple expression
+     */
+    static SimpleXPath parse(String expression) {
+        if (expression == null || expression.isEmpty()) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        String attribute = null;
+        var start = 0;
+        while (start <= expression.length()) {
+            var end = expression.indexOf('/', start);
+            if (end == -1) {
+                end = expression.length();
+            }
+            var step = expression.substring(start, end);
+            if (!step.isEmpty() && step.charAt(0) == '@') {
+                // attribute must be the last step
+                attribute = step.substring(1);
+                if (end != expression.length() || !isName(attribute)
+                        || attribute.equals("xmlns")) {
+                    return null;
+                }
+            } else if (isName(step)) {
+                names.add(step);
+            } else {
+                return null;
+            }
+            start = end + 1;
+        }
+        return new SimpleXPath(names.toArray(new String[0]), attribute);
+    }
+
+    /**
+     * Gets the first matching node, in document order.
+     * @param context node to evaluate against
+     * @return matching node wrapped in a list (empty if no match), or
+     *     <code>null</code> if the document cannot be evaluated without
+     *     XPath
+     */
+    NodeArrayList selectFirst(Node context) {
+        return select(context, true);
+    }
+
+    /**
+     * Gets all matching nodes, in document order.
+     * @param context node to evaluate against
+     * @return matching nodes (empty if no match), or <code>null</code>
+     *     if the document cannot be evaluated without XPath
+     */
+    NodeArrayList selectAll(Node context) {
+        return select(context, false);
+    }
+
+    private NodeArrayList select(Node context, boolean firstOnly) {
+        if (context == null || (context.getNodeType() != Node.ELEMENT_NODE
+                && context.getNodeType() != Node.DOCUMENT_NODE)) {
+            return null;
+        }
+        var results = new NodeArrayList((NodeList) null);
+        return select(context, 0, firstOnly, results) ? results : null;
+    }
+
+    // Returns false if the fast path cannot be trusted.
+    private boolean select(Node parent, int depth,
+            boolean firstOnly, NodeArrayList results) {
+        if (depth == elementNames.length) {
+            if (attributeName == null) {
+                results.add(parent);
+                return true;
+            }
+            return selectAttribute(parent, results);
+        }
+        var name = elementNames[depth];
+        for (var child = parent.getFirstChild();
+                child != null; child = child.getNextSibling()) {
+            var type = child.getNodeType();
+            if (type == Node.ENTITY_REFERENCE_NODE) {
+                return false;
+            }
+            if (type != Node.ELEMENT_NODE) {
+                continue;
+            }
+            if (!isPlain(child)) {
+                return false;
+            }
+            if (name.equals(child.getNodeName())) {
+                if (!select(child, depth + 1, firstOnly, results)) {
+                    return false;
+                }
+                if (firstOnly && !results.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean selectAttribute(Node node, NodeArrayList results) {
+        if (node.getNodeType() != Node.ELEMENT_NODE) {
+            return node.getNodeType() == Node.DOCUMENT_NODE;
+        }
+        // also covers the context element, not checked when walking down
+        if (!isPlain(node)) {
+            return false;
+        }
+        var attr = ((Element) node).getAttributeNode(attributeName);
+        if (attr != null) {
+            results.add(attr);
+        }
+        return true;
+    }
+
+    // Whether an element and its attributes have no namespace, no prefix,
+    // and no namespace declarations.
+    private static boolean isPlain(Node element) {
+        if (!isPlainName(element)) {
+            return false;
+        }
+        var attribs = element.getAttributes();
+        for (var i = 0; i < attribs.getLength(); i++) {
+            var attr = (Attr) attribs.item(i);
+            if (!isPlainName(attr) || attr.getName().equals("xmlns")) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static boolean isPlainName(Node node) {
+        return node.getNamespaceURI() == null
+                && node.getNodeName().indexOf(':') == -1;
+    }
+
+    // Whether a string is an XML name without a prefix (NCName).
+    private static boolean isName(String str) {
+        if (str.isEmpty() || !isNameStart(str.charAt(0))) {
+            return false;
+        }
+        for (var i = 1; i < str.length(); i++) {
+            var ch = str.charAt(i);
+            if (!isNameStart(ch) && ch != '-' && ch != '.'
+                    && !Character.isDigit(ch)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static boolean isNameStart(char ch) {
+        return ch == '_' || Character.isLetter(ch);
+    }
+}
@@ -1,4 +1,4 @@
-/* Copyright 2010-2022 Norconex Inc.
+/* Copyright 2010-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,9 +26,11 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.math.BigDecimal;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
@@ -44,6 +46,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
@@ -53,17 +56,16 @@ import java.util.stream.StreamSupport;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -151,8 +153,20 @@ public class XML implements Iterable<XMLCursor> {
     private static final String XPATH_ATT_CLASS = "@class";
     private static final String ATT_XML_SPACE = "xml:space";
 
+    // Compiled schemas are immutable and thread-safe, so they are shared.
+    // Stored with their class so they do not prevent its class loader
+    // from being garbage collected.
+    private static final ClassValue<AtomicReference<CachedSchema>> SCHEMAS =
+            new ClassValue<>() {
+        @Override
+        protected AtomicReference<CachedSchema> computeValue(Class<?> type) {
+            return new AtomicReference<>();
+        }
+    };
+
     private final Node node;
     private final ErrorHandler errorHandler;
+    // null when using the default one (allows for pooled document builders)
     private final DocumentBuilderFactory documentBuilderFactory;
 
     //--- Constructors ---------------------------------------------------------
@@ -231,7 +245,7 @@ public class XML implements Iterable<XMLCursor> {
             DocumentBuilderFactory documentBuilderFactory) {
         this.node = node;
         this.errorHandler = defaultIfNull(errorHandler);
-        this.documentBuilderFactory = defaultIfNull(documentBuilderFactory);
+        this.documentBuilderFactory = documentBuilderFactory;
         if (sourceObject != null) {
             if (sourceObject instanceof Class) {
                 setAttribute(
@@ -302,7 +316,6 @@ public class XML implements Iterable<XMLCursor> {
         }
         public XML create() {
             errorHandler = defaultIfNull(errorHandler);
-            documentBuilderFactory = defaultIfNull(documentBuilderFactory);
 
             if (source instanceof Node n) {
                 return new XML(n, null, errorHandler, documentBuilderFactory);
@@ -342,11 +355,15 @@ public class XML implements Iterable<XMLCursor> {
                     "$1$2 xml:space=\"empty\" $3$4");
             Element node = null;
             try {
-                node = documentBuilderFactory.newDocumentBuilder()
-                        .parse(new InputSource(new StringReader(xmlStr)))
-                            .getDocumentElement();
-            } catch (ParserConfigurationException
-                    | SAXException | IOException e) {
+                var input = new InputSource(new StringReader(xmlStr));
+                if (documentBuilderFactory == null) {
+                    node = XMLUtil.withDocumentBuilder(
+                            b -> b.parse(input)).getDocumentElement();
+                } else {
+                    node = documentBuilderFactory.newDocumentBuilder()
+                            .parse(input).getDocumentElement();
+                }
+            } catch (Exception e) { //NOSONAR parsing exceptions
                 throw new XMLException("Could not parse XML.", e);
             }
 
@@ -1075,18 +1092,38 @@ public class XML implements Iterable<XMLCursor> {
         return node;
     }
     private Node getNode(String xpathExpression, Node parentNode) {
+        var simple = selectSimple(xpathExpression, parentNode, true);
+        if (simple != null) {
+            return simple.isEmpty() ? null : simple.get(0);
+        }
         try {
-            return (Node) XPathUtil.newXPathExpression(
+            return (Node) XPathUtil.getXPathExpression(
                     xpathExpression).evaluate(parentNode, XPathConstants.NODE);
         } catch (XPathExpressionException e) {
             throw new XMLException(
                     "Could not evaluate XPath expression.", e);
         }
     }
+    // Simple expressions (e.g., "a/b/@c") are resolved by walking the DOM,
+    // which is much faster than XPath. Returns null when XPath is needed.
+    private static NodeArrayList selectSimple(
+            String xpathExpression, Node contextNode, boolean firstOnly) {
+        var simple = SimpleXPath.parse(xpathExpression);
+        if (simple == null) {
+            return null;
+        }
+        return firstOnly
+                ? simple.selectFirst(contextNode)
+                : simple.selectAll(contextNode);
+    }
     private Optional<NodeArrayList> getNodeList(String xpathExpression) {
         try {
-            var nodeList = (NodeList) XPathUtil.newXPathExpression(
-                    xpathExpression).evaluate(node, XPathConstants.NODESET);
+            NodeList nodeList = selectSimple(xpathExpression, node, false);
+            if (nodeList == null) {
+                nodeList = (NodeList) XPathUtil.getXPathExpression(
+                        xpathExpression).evaluate(
+                                node, XPathConstants.NODESET);
+            }
 
             if (nodeList != null && nodeList.getLength() > 0) {
                 return Optional.of(new NodeArrayList(nodeList));
@@ -1795,33 +1832,25 @@ public class XML implements Iterable<XMLCursor> {
         var xsdResource = ClassUtils.getShortCanonicalName(clazz) + ".xsd";
         LOG.debug("Validating XML for class {}",
                 ClassUtils.getSimpleName(clazz));
-        if (clazz.getResource(xsdResource) == null) {
+        var xsdURL = clazz.getResource(xsdResource);
+        if (xsdURL == null) {
             LOG.debug("XSD schema not found for validation: {}", xsdResource);
             return;
         }
 
-        try (var xsdStream = clazz.getResourceAsStream(xsdResource);
-                var xmlReader = toReader()) {
-            validate(clazz, xsdStream, xmlReader);
+        try (var xmlReader = toReader()) {
+            validate(getSchema(clazz, xsdURL), xmlReader);
         } catch (SAXException | IOException e) {
             throw new XMLException("Could not validate class: " + clazz, e);
         }
     }
     private void validate(
-            Class<?> clazz,
-            InputStream xsdStream,
-            Reader reader) throws SAXException, IOException {
+            Schema schema, Reader reader) throws SAXException, IOException {
 
         // See also: https://github.com/OWASP/CheatSheetSeries/blob/master/
         // cheatsheets/XML_External_Entity_Prevention_Cheat_Sheet.md
 
-        new ArrayList<>();
-
-        var schemaFactory = XMLUtil.createSchemaFactory();
-        schemaFactory.setResourceResolver(new ClasspathResourceResolver(clazz));
-
-        var schema = schemaFactory.newSchema(
-                new StreamSource(xsdStream, getXSDResourcePath(clazz)));
+        // Validators are not thread-safe, unlike schemas
         var validator = XMLUtil.createSchemaValidator(schema);
 
         validator.setErrorHandler(errorHandler);
@@ -1917,20 +1946,19 @@ public class XML implements Iterable<XMLCursor> {
             var w = new StringWriter();
             Result outputTarget = new StreamResult(w);
 
-            var factory = TransformerFactory.newInstance();
-            factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-
-            var t = factory.newTransformer();
-            t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            t.setOutputProperty(OutputKeys.INDENT, indent > 0 ? "yes" : "no");
-            t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            if (indent > 0) {
+            XMLUtil.withTransformer(t -> {
+                t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
                 t.setOutputProperty(
-                        "{http://xml.apache.org/xslt}indent-amount",
-                        Integer.toString(indent));
-            }
-            t.transform(new DOMSource(node), outputTarget);
+                        OutputKeys.INDENT, indent > 0 ? "yes" : "no");
+                t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+                if (indent > 0) {
+                    t.setOutputProperty(
+                            "{http://xml.apache.org/xslt}indent-amount",
+                            Integer.toString(indent));
+                }
+                t.transform(new DOMSource(node), outputTarget);
+                return null;
+            });
 
             var xmlStr = w.toString();
             // convert self-closing tags with "empty" attribute to empty tags
@@ -2000,8 +2028,12 @@ public class XML implements Iterable<XMLCursor> {
     }
 
     public boolean contains(String xpathExpression) {
+        var simple = selectSimple(xpathExpression, node, true);
+        if (simple != null) {
+            return !simple.isEmpty();
+        }
         try {
-            return XPathUtil.newXPathExpression(xpathExpression).evaluate(
+            return XPathUtil.getXPathExpression(xpathExpression).evaluate(
                     node, XPathConstants.NODE) != null;
         } catch (XPathExpressionException e) {
             throw new XMLException(
@@ -2919,7 +2951,7 @@ public class XML implements Iterable<XMLCursor> {
         return errorHandler;
     }
     public DocumentBuilderFactory getDocumentBuilderFactory() {
-        return documentBuilderFactory;
+        return defaultIfNull(documentBuilderFactory);
     }
 
     public static boolean isXMLConfigurable(Object obj) {
@@ -3090,11 +3122,10 @@ public class XML implements Iterable<XMLCursor> {
     //         java-properly-indenting-xml-string/
     private void fixIndent(int indent) {
         if (indent > 0) {
-            var xPath = XPathUtil.newXPath();
             try {
-                var nodeList = (NodeList) xPath.evaluate(
-                        "//text()[normalize-space()='']",
-                        node, XPathConstants.NODESET);
+                var nodeList = (NodeList) XPathUtil.getXPathExpression(
+                        "//text()[normalize-space()='']").evaluate(
+                                node, XPathConstants.NODESET);
                 for (var i = 0; i < nodeList.getLength(); ++i) {
                     var n = nodeList.item(i);
                     n.getParentNode().removeChild(n);
@@ -3105,6 +3136,90 @@ public class XML implements Iterable<XMLCursor> {
         }
     }
 
+    // Gets a compiled schema from cache, compiling it if not cached or
+    // if its XSD file or any XSD it includes or imports was modified since.
+    /*default*/ static Schema getSchema(Class<?> clazz, URL xsdURL)
+            throws SAXException, IOException {
+        var url = xsdURL.toString();
+        var cachedRef = SCHEMAS.get(clazz);
+        var cached = cachedRef.get();
+        if (cached != null && cached.isCurrent(url)) {
+            return cached.schema;
+        }
+        List<URL> xsdURLs = new ArrayList<>();
+        xsdURLs.add(xsdURL);
+        // taken before compiling so changes made during it are detected
+        var lastModified = getLastModified(xsdURL);
+        try (var xsdStream = xsdURL.openStream()) {
+            var schemaFactory = XMLUtil.createSchemaFactory();
+            var resolver = new ClasspathResourceResolver(clazz);
+            schemaFactory.setResourceResolver(
+                    (type, namespaceURI, publicId, systemId, baseURI) -> {
+                var input = resolver.resolveResource(
+                        type, namespaceURI, publicId, systemId, baseURI);
+                if (input != null) {
+                    // same lookup as the resolver
+                    var includedURL = ClasspathResourceResolver.class
+                            .getResource(input.getSystemId());
+                    if (includedURL != null) {
+                        xsdURLs.add(includedURL);
+                    }
+                }
+                return input;
+            });
+            var schema = schemaFactory.newSchema(
+                    new StreamSource(xsdStream, getXSDResourcePath(clazz)));
+            var lastModifiedTimes = new long[xsdURLs.size()];
+            lastModifiedTimes[0] = lastModified;
+            for (var i = 1; i < lastModifiedTimes.length; i++) {
+                lastModifiedTimes[i] = getLastModified(xsdURLs.get(i));
+            }
+            cachedRef.set(new CachedSchema(
+                    url, xsdURLs, lastModifiedTimes, schema));
+            return schema;
+        }
+    }
+    // Only XSD files can change while running. Resources in jars or
+    // elsewhere get -1.
+    private static long getLastModified(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return -1;
+        }
+        try {
+            return Files.getLastModifiedTime(
+                    Path.of(url.toURI())).toMillis();
+        } catch (IOException | URISyntaxException
+                | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+    private static final class CachedSchema {
+        private final String url;
+        // the XSD and the ones it includes or imports, if any
+        private final List<URL> xsdURLs;
+        private final long[] lastModifiedTimes;
+        private final Schema schema;
+        private CachedSchema(String url, List<URL> xsdURLs,
+                long[] lastModifiedTimes, Schema schema) {
+            this.url = url;
+            this.xsdURLs = xsdURLs;
+            this.lastModifiedTimes = lastModifiedTimes;
+            this.schema = schema;
+        }
+        private boolean isCurrent(String url) {
+            if (!this.url.equals(url)) {
+                return false;
+            }
+            for (var i = 0; i < lastModifiedTimes.length; i++) {
+                if (getLastModified(xsdURLs.get(i))
+                        != lastModifiedTimes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private static String getXSDResourcePath(Class<?> clazz) {
         if (clazz == null) {
             return null;
@@ -1,4 +1,4 @@
-/* Copyright 2021-2022 Norconex Inc.
+/* Copyright 2021-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,7 +18,7 @@ import java.util.LinkedList;
 import java.util.function.Function;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLOutputFactory;
@@ -42,6 +42,16 @@ import com.norconex.commons.lang.map.Properties;
  */
 public class XMLCursor {
 
+    // Costly to look up and not guaranteed to be thread-safe. Cleared
+    // with XMLUtil#clearThreadCaches().
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY =
+            ThreadLocal.withInitial(XMLOutputFactory::newInstance);
+
+    // See XMLUtil#clearThreadCaches()
+    /*default*/ static void clearThreadCache() {
+        OUTPUT_FACTORY.remove();
+    }
+
     private final XMLEventReader reader;
     private final StartElement element;
     private final LinkedList<String> pathSegments;
@@ -113,9 +123,9 @@ public class XMLCursor {
         ensureNotRead();
         try {
             read = true;
-            var dom = XMLUtil.createDocumentBuilderFactory()
-                    .newDocumentBuilder().newDocument();
-            final var writer = XMLOutputFactory.newInstance()
+            var dom = XMLUtil.withDocumentBuilder(
+                    DocumentBuilder::newDocument);
+            final var writer = OUTPUT_FACTORY.get()
                     .createXMLEventWriter(new DOMResult(dom));
             writer.add(element);
             var depth = 1; // start element counts for one
@@ -134,8 +144,7 @@ public class XMLCursor {
                 reader.nextEvent(); // real read, sine we peeked.
             }
             return dom.getDocumentElement();
-        } catch (ParserConfigurationException
-                | XMLStreamException | FactoryConfigurationError e) {
+        } catch (XMLStreamException | FactoryConfigurationError e) {
             throw new XMLException(
                     "Could not convert cursor to XML object.", e);
         }
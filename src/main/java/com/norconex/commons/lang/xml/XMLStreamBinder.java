@@ -0,0 +1,202 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.xml;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLStreamException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Binds XML elements to {@link XML} instances or objects while streaming
+ * an XML source, without loading the whole document in memory.
+ * Only elements matching a registered path are materialized,
+ * one at a time, each as an {@link XML} of its own. It is passed to
+ * the matching consumer and is discarded after. Memory usage is
+ * bounded by the size of the largest matching element instead of the
+ * size of the document, which makes it suitable for large XML files.
+ * </p>
+ * <p>
+ * Paths are absolute element paths (e.g., <code>/catalog/book</code>).
+ * An element matches a path when either its full path (with namespace
+ * prefixes) or its local path (without them) is equal to it.
+ * For more control, a {@link Predicate} of {@link XMLCursor} can be
+ * used instead. When several bindings match an element, only the first
+ * one registered is used. Elements nested in a matching element are
+ * part of its XML and are not matched themselves.
+ * </p>
+ * <p>
+ * Binding to objects behaves like {@link XML#toObjectImpl(Class)},
+ * including XSD validation: the "class" attribute of a matching element
+ * is used to create the object when present. Otherwise, a new instance of
+ * the supplied type is created and populated with
+ * {@link XML#populate(Object)} (e.g., invoking
+ * {@link XMLConfigurable#loadFromXML(XML)}).
+ * </p>
+ * <h3>Differences with parsing a whole XML</h3>
+ * <p>
+ * Streaming does not make a difference between empty tags
+ * (<code>&lt;a&gt;&lt;/a&gt;</code>) and self-closing ones
+ * (<code>&lt;a/&gt;</code>). Both are read as self-closing, which
+ * {@link XML} treats as <code>null</code> values.
+ * </p>
+ * <h3>Usage</h3>
+ * <pre>
+ * new XMLStreamBinder()
+ *     .onXML("/catalog/plant", xml -&gt; plantPrices.add(
+ *             xml.getInteger("price")))
+ *     .onObject("/catalog/book", Book.class, books::add)
+ *     .bind(Path.of("catalog.xml"));
+ * </pre>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ * @since 3.0.0
+ */
+@Slf4j
+public class XMLStreamBinder {
+
+    private final List<Binding> bindings = new ArrayList<>();
+
+    /**
+     * Binds elements matching the given path to {@link XML} instances.
+     * @param path absolute element path
+     * @param consumer consumes XML of matching elements
+     * @return this instance
+     */
+    public XMLStreamBinder onXML(String path, Consumer<XML> consumer) {
+        Objects.requireNonNull(path, "'path' must not be null.");
+        return onXML(c -> matches(c, path), consumer);
+    }
+    /**
+     * Binds elements matching the given predicate to {@link XML} instances.
+     * The predicate must not read from the cursor.
+     * @param matcher tests whether an element matches
+     * @param consumer consumes XML of matching elements
+     * @return this instance
+     */
+    public XMLStreamBinder onXML(
+            Predicate<XMLCursor> matcher, Consumer<XML> consumer) {
+        Objects.requireNonNull(matcher, "'matcher' must not be null.");
+        Objects.requireNonNull(consumer, "'consumer' must not be null.");
+        bindings.add(new Binding(matcher, consumer));
+        return this;
+    }
+
+    /**
+     * Binds elements matching the given path to objects of the given type.
+     * @param path absolute element path
+     * @param type expected object (super) type
+     * @param consumer consumes objects created from matching elements
+     * @param <T> object type
+     * @return this instance
+     */
+    public <T> XMLStreamBinder onObject(
+            String path, Class<T> type, Consumer<T> consumer) {
+        Objects.requireNonNull(path, "'path' must not be null.");
+        return onObject(c -> matches(c, path), type, consumer);
+    }
+    /**
+     * Binds elements matching the given predicate to objects of the
+     * given type. The predicate must not read from the cursor.
+     * @param matcher tests whether an element matches
+     * @param type expected object (super) type
+     * @param consumer consumes objects created from matching elements
+     * @param <T> object type
+     * @return this instance
+     */
+    public <T> XMLStreamBinder onObject(Predicate<XMLCursor> matcher,
+            Class<T> type, Consumer<T> consumer) {
+        Objects.requireNonNull(type, "'type' must not be null.");
+        Objects.requireNonNull(consumer, "'consumer' must not be null.");
+        return onXML(matcher, xml -> consumer.accept(toObject(xml, type)));
+    }
+
+    /**
+     * <p>
+     * Streams the supplied XML source, passing matching elements to their
+     * consumers as they are encountered. Supported sources are the
+     * same as {@link XMLUtil#createXMLEventReader(Object)}.
+     * Readers and input streams are not closed.
+     * </p>
+     * @param source XML source
+     * @return number of elements that were bound
+     * @throws XMLException problem reading the XML
+     */
+    public long bind(Object source) {
+        var reader = XMLUtil.createXMLEventReader(source);
+        try {
+            var it = new XMLIterator(reader);
+            var count = 0L;
+            while (it.hasNext()) {
+                var cursor = it.next();
+                for (Binding binding : bindings) {
+                    if (binding.matcher.test(cursor)) {
+                        binding.consumer.accept(cursor.readAsXML());
+                        count++;
+                        break;
+                    }
+                }
+            }
+            return count;
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                LOG.debug("Could not close XML event reader.", e);
+            }
+        }
+    }
+
+    private static boolean matches(XMLCursor cursor, String path) {
+        var fullPath = cursor.getPath();
+        return fullPath.equals(path) || (fullPath.indexOf(':') != -1
+                && cursor.getLocalPath().equals(path));
+    }
+
+    private static <T> T toObject(XML xml, Class<T> type) {
+        T obj = xml.toObjectImpl(type);
+        if (obj != null || xml.contains("@class")
+                || type.isInterface()
+                || Modifier.isAbstract(type.getModifiers())) {
+            return obj;
+        }
+        try {
+            obj = type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new XMLException(
+                    "This class could not be instantiated: " + type, e);
+        }
+        xml.populate(obj);
+        return obj;
+    }
+
+    private static final class Binding {
+        private final Predicate<XMLCursor> matcher;
+        private final Consumer<XML> consumer;
+        private Binding(
+                Predicate<XMLCursor> matcher, Consumer<XML> consumer) {
+            this.matcher = matcher;
+            this.consumer = consumer;
+        }
+    }
+}
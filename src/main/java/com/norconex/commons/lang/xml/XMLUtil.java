@@ -1,4 +1,4 @@
-/* Copyright 2019-2022 Norconex Inc.
+/* Copyright 2019-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@ package com.norconex.commons.lang.xml;
 
 import static javax.xml.XMLConstants.ACCESS_EXTERNAL_DTD;
 import static javax.xml.XMLConstants.ACCESS_EXTERNAL_SCHEMA;
+import static javax.xml.XMLConstants.ACCESS_EXTERNAL_STYLESHEET;
 import static javax.xml.XMLConstants.FEATURE_SECURE_PROCESSING;
 
 import java.io.File;
@@ -27,10 +28,15 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -38,6 +44,10 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.util.EventReaderDelegate;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
@@ -45,6 +55,7 @@ import javax.xml.validation.Validator;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.function.FailableConsumer;
+import org.apache.commons.lang3.function.FailableFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
@@ -60,6 +71,15 @@ import org.xml.sax.XMLReader;
  *   <li>Addresses XML security vulnerabilities (XXE).</li>
  *   <li>Wraps checked exceptions in a runtime {@link XMLException}.</li>
  * </ul>
+ * <p>
+ * Document builders and transformers being costly to create and not
+ * thread-safe, reusable instances are kept in small per-thread pools
+ * (see {@link #withDocumentBuilder(FailableFunction)} and
+ * {@link #withTransformer(FailableFunction)}).
+ * Being kept for as long as their thread lives, they also keep the class
+ * loader of their JAXP implementation from being garbage collected.
+ * Use {@link #clearThreadCaches()} to release them.
+ * </p>
  *
  * @since 2.0.0
  */
@@ -81,6 +101,17 @@ public final class XMLUtil {
 
     private static final Set<String> alreadyLogged = new HashSet<>();
 
+    // Maximum number of idle instances kept per thread, per pool. More than
+    // one is only needed when borrowing recursively.
+    private static final int POOL_MAX_SIZE = 4;
+
+    private static final ThreadLocal<Deque<DocumentBuilder>>
+            DOCUMENT_BUILDERS = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ThreadLocal<Deque<Transformer>>
+            TRANSFORMERS = ThreadLocal.withInitial(ArrayDeque::new);
+    // Never exposed, so never modified once created
+    private static final ThreadLocal<SAXParserFactory> SAX_PARSER_FACTORY =
+            ThreadLocal.withInitial(XMLUtil::createSaxParserFactory);
 
     private XMLUtil() {}
 
@@ -98,7 +129,7 @@ public final class XMLUtil {
   }
 
     public static XMLReader createXMLReader() {
-        var parserFactory = createSaxParserFactory();
+        var parserFactory = SAX_PARSER_FACTORY.get();
         SAXParser parser;
         XMLReader xmlReader;
         try {
@@ -137,6 +168,116 @@ public final class XMLUtil {
         return factory;
     }
 
+    /**
+     * Creates a {@link TransformerFactory} not allowing access to external
+     * DTDs and stylesheets.
+     * @return transformer factory
+     * @since 3.0.0
+     */
+    public static TransformerFactory createTransformerFactory() {
+        var factory =
+                TransformerFactory.newInstance(); //NOSONAR handled
+        set(factory, f -> f.setAttribute(ACCESS_EXTERNAL_DTD, ""));
+        set(factory, f -> f.setAttribute(ACCESS_EXTERNAL_STYLESHEET, ""));
+        return factory;
+    }
+
+    /**
+     * <p>
+     * Applies the given function to a {@link DocumentBuilder} taken from
+     * a pool kept for the current thread. The builder is created
+     * from {@link #createDocumentBuilderFactory()} (without namespace
+     * support) and is reset when the function returns. It must not be
+     * used outside the function.
+     * </p>
+     * @param <R> function return type
+     * @param <E> function exception type
+     * @param function function using the document builder
+     * @return function return value
+     * @throws E exception thrown by the function
+     * @since 3.0.0
+     */
+    public static <R, E extends Throwable> R withDocumentBuilder(
+            FailableFunction<DocumentBuilder, R, E> function) throws E {
+        return withPooled(DOCUMENT_BUILDERS, () -> {
+            try {
+                return createDocumentBuilderFactory().newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new XMLException("Could not create DocumentBuilder.", e);
+            }
+        }, DocumentBuilder::reset, function);
+    }
+
+    /**
+     * <p>
+     * Applies the given function to a {@link Transformer} taken from
+     * a pool kept for the current thread. The transformer is created
+     * from {@link #createTransformerFactory()} and is reset when the
+     * function returns (e.g., output properties set by the function
+     * are cleared). It must not be used outside the function.
+     * </p>
+     * @param <R> function return type
+     * @param <E> function exception type
+     * @param function function using the transformer
+     * @return function return value
+     * @throws E exception thrown by the function
+     * @since 3.0.0
+     */
+    public static <R, E extends Throwable> R withTransformer(
+            FailableFunction<Transformer, R, E> function) throws E {
+        return withPooled(TRANSFORMERS, () -> {
+            try {
+                return createTransformerFactory().newTransformer();
+            } catch (TransformerConfigurationException e) {
+                throw new XMLException("Could not create Transformer.", e);
+            }
+        }, Transformer::reset, function);
+    }
+
+    /**
+     * <p>
+     * Clears XML-related objects cached for the current thread by this
+     * class, {@link XPathUtil}, and {@link XMLCursor}: pooled document
+     * builders and transformers, factories, and compiled XPath
+     * expressions. They are created again when needed.
+     * </p>
+     * <p>
+     * Those objects come from JAXP implementations looked up with the
+     * thread context class loader. On long-lived threads (e.g., from a
+     * shared thread pool), invoke this method once done with XML
+     * processing for a class loader that can be discarded (e.g., of a web
+     * application or plugin being unloaded), so it can be garbage collected.
+     * </p>
+     * @since 3.0.0
+     */
+    public static void clearThreadCaches() {
+        DOCUMENT_BUILDERS.remove();
+        TRANSFORMERS.remove();
+        SAX_PARSER_FACTORY.remove();
+        XPathUtil.clearThreadCache();
+        XMLCursor.clearThreadCache();
+    }
+
+    private static <T, R, E extends Throwable> R withPooled(
+            ThreadLocal<Deque<T>> pool,
+            Supplier<T> creator,
+            Consumer<T> resetter,
+            FailableFunction<T, R, E> function) throws E {
+        var idle = pool.get();
+        var obj = idle.poll();
+        if (obj == null) {
+            obj = creator.get();
+        }
+        try {
+            return function.apply(obj);
+        } finally {
+            resetter.accept(obj);
+            if (idle.size() < POOL_MAX_SIZE) {
+                idle.push(obj);
+            }
+        }
+    }
+
     public static XMLInputFactory createXMLInputFactory() {
         var factory = XMLInputFactory.newInstance();
         factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
@@ -214,12 +355,29 @@ public final class XMLUtil {
         return createXMLEventReader(path.toFile());
     }
     private static XMLEventReader createXMLEventReader(File file) {
-        try (var r = new FileReader(file)) {
-            return createXMLEventReader(r);
+        FileReader r;
+        try {
+            r = new FileReader(file);
         } catch (IOException e) {
             throw new XMLException(
                     "Could not stream XML file " + file.getAbsolutePath(), e);
         }
+        try {
+            // the file reader is only closed with the event reader
+            return new EventReaderDelegate(createXMLEventReader(r)) {
+                @Override
+                public void close() throws XMLStreamException {
+                    try {
+                        super.close();
+                    } finally {
+                        IOUtils.closeQuietly(r);
+                    }
+                }
+            };
+        } catch (XMLException e) {
+            IOUtils.closeQuietly(r);
+            throw e;
+        }
     }
     private static XMLEventReader createXMLEventReader(Node node) {
         return createXMLEventReader(new XML(node));
@@ -1,4 +1,4 @@
-/* Copyright 2022 Norconex Inc.
+/* Copyright 2022-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,12 +21,30 @@ import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.norconex.commons.lang.map.FifoMap;
+
 /**
  * XPath-related utility methods.
+ * XPath factories and compiled expressions are not thread-safe, so they
+ * are kept per thread: looking up the factory and compiling a given
+ * expression are only done once per thread. They can be cleared with
+ * {@link XMLUtil#clearThreadCaches()}.
  * @since 3.0.0
  */
 public final class XPathUtil {
 
+    // Maximum number of compiled expressions kept per thread
+    private static final int EXPRESSION_CACHE_SIZE = 256;
+
+    private static final ThreadLocal<XPathFactory> FACTORY =
+            ThreadLocal.withInitial(XPathFactory::newInstance);
+    // Only used to compile expressions, so never modified
+    private static final ThreadLocal<XPath> XPATH =
+            ThreadLocal.withInitial(() -> FACTORY.get().newXPath());
+    private static final ThreadLocal<FifoMap<String, XPathExpression>>
+            EXPRESSIONS = ThreadLocal.withInitial(
+                    () -> new FifoMap<>(EXPRESSION_CACHE_SIZE));
+
     private XPathUtil() {}
 
     /**
@@ -48,8 +66,7 @@ public final class XPathUtil {
      * @return new XPath instance
      */
     public static XPath newXPath() {
-        // Consider caching w/ ThreadLocal if performance becomes a concern
-        return XPathFactory.newInstance().newXPath();
+        return FACTORY.get().newXPath();
     }
     /**
      * Gets a new compiled {@link XPathExpression} from the given string.
@@ -58,9 +75,28 @@ public final class XPathUtil {
      */
     public static XPathExpression newXPathExpression(String expression) {
         try {
-            return newXPath().compile(expression);
+            return XPATH.get().compile(expression);
         } catch (XPathExpressionException e) {
             throw new XMLException("Could not create XPath expression.", e);
         }
     }
+
+    // See XMLUtil#clearThreadCaches()
+    /*default*/ static void clearThreadCache() {
+        FACTORY.remove();
+        XPATH.remove();
+        EXPRESSIONS.remove();
+    }
+
+    // Gets a compiled expression from the current thread cache, compiling
+    // it if not cached. Must not be shared with other threads.
+    /*default*/ static XPathExpression getXPathExpression(String expression) {
+        var expressions = EXPRESSIONS.get();
+        var expr = expressions.get(expression);
+        if (expr == null) {
+            expr = newXPathExpression(expression);
+            expressions.put(expression, expr);
+        }
+        return expr;
+    }
 }
@@ -14,6 +14,7 @@
  */
 package com.norconex.commons.lang.file;
 
+import static java.nio.charset.StandardCharsets.UTF_16BE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -24,6 +25,7 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.ZoneId;
 import java.util.ArrayList;
@@ -353,6 +355,43 @@ class FileUtilTest {
             .containsExactly("three", "four", "five");
     }
 
+    @Test
+    void testTailEncodingsAndTerminators() throws IOException {
+        var file = new File(tempDir, "tail.txt");
+        var text = "un\r\ndeux\r\n\r\ntroisième\rquatre\nélan ✓";
+        Files.writeString(file.toPath(), text, UTF_8);
+        assertThat(FileUtil.tail(file, UTF_8.toString(), 4, false))
+            .containsExactly("", "troisième", "quatre", "élan ✓");
+        assertThat(FileUtil.tail(file, 4))
+            .containsExactly("deux", "troisième", "quatre", "élan ✓");
+        assertThat(FileUtil.tail(file, 10)).hasSize(5);
+
+        // line terminators are not single bytes in UTF-16
+        Files.writeString(file.toPath(), "one\ntwo\nthree", UTF_16BE);
+        assertThat(FileUtil.tail(file, UTF_16BE.toString(), 2))
+            .containsExactly("two", "three");
+
+        Files.writeString(file.toPath(), "");
+        assertThat(FileUtil.tail(file, 2)).isEmpty();
+    }
+
+    @Test
+    void testTailLargeFile() throws IOException {
+        // spans more than one mapped window
+        var file = new File(tempDir, "large.txt");
+        try (var w = Files.newBufferedWriter(file.toPath())) {
+            for (var i = 0; i < 1_000_000; i++) {
+                w.write("Line " + i + "\n");
+            }
+        }
+        assertThat(file.length()).isGreaterThan(8 * 1024 * 1024);
+        assertThat(FileUtil.tail(file, 2))
+            .containsExactly("Line 999998", "Line 999999");
+        assertThat(FileUtil.tail(file, UTF_8.toString(), 1, true,
+                line -> line.endsWith("0000")))
+            .containsExactly("Line 990000");
+    }
+
     @Test
     void testCreateDateTimeDirs() throws IOException {
         var file = FileUtil.createDateTimeDirs(tempDir,
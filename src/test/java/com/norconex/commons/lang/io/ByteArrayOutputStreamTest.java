@@ -1,4 +1,4 @@
-/* Copyright 2015-2022 Norconex Inc.
+/* Copyright 2015-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,11 +21,17 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  */
@@ -120,6 +126,82 @@ class ByteArrayOutputStreamTest {
         }
     }
 
+    @Test
+    void testWriteToChannel(@TempDir Path tempDir) throws IOException {
+        // sizes around buffer and gathering batch boundaries
+        for (int size : new int[] { 0, 1, 10, 11, 10 * 1024, 10 * 1024 + 3 }) {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = (byte) i;
+            }
+            Path file = tempDir.resolve("size-" + size);
+            try (ByteArrayOutputStream out = new ByteArrayOutputStream(10);
+                    FileChannel channel = FileChannel.open(file,
+                            StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE)) {
+                out.write(bytes);
+                assertThat(out.writeTo(channel)).isEqualTo(size);
+            }
+            assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+        }
+    }
+
+    @Test
+    void testPooledBuffers() throws IOException {
+        ByteArrayPool pool = new ByteArrayPool(4, 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pool);
+        out.write("0123456789".getBytes(UTF_8));
+        assertThat(out.toString()).isEqualTo("0123456789");
+
+        ByteBuffer[] views = out.toByteBuffers();
+        assertThat(views).hasSize(3);
+        assertThat(views[0].isReadOnly()).isTrue();
+        assertThat(views[2].remaining()).isEqualTo(2);
+
+        // one buffer is kept on reset
+        out.reset();
+        assertThat(pool.getPooledCount()).isEqualTo(2);
+        assertThat(out.size()).isZero();
+        out.write("abcde".getBytes(UTF_8));
+        assertThat(out.toString()).isEqualTo("abcde");
+
+        // none kept on dispose, but can still be written to
+        out.dispose();
+        assertThat(pool.getPooledCount()).isEqualTo(3);
+        assertThat(out.toByteBuffers()).isEmpty();
+        out.write('x');
+        assertThat(out.toString()).isEqualTo("x");
+        assertThat(pool.getPooledCount()).isEqualTo(2);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> pool.release(new byte[5]));
+    }
+
+    @Test
+    void testSingleWriter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16, true);
+        assertThat(out.isSingleWriter()).isTrue();
+        assertThat(new ByteArrayOutputStream().isSingleWriter()).isFalse();
+
+        // a reader thread sees consistent content as it is written
+        int total = 200_000;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                out.write(i % 100);
+            }
+        });
+        writer.start();
+        int size;
+        do {
+            size = out.size();
+            if (size > 0) {
+                assertThat(out.getByte(size - 1)).isEqualTo((size - 1) % 100);
+            }
+        } while (size < total);
+        writer.join();
+        assertThat(out.toByteArray()).hasSize(total);
+    }
+
     @Test
     void testToX() throws IOException {
         String val = "0123456789";
@@ -21,12 +21,27 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.NullInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.norconex.commons.lang.Sleeper;
 
 /**
  */
@@ -103,6 +118,11 @@ class CachedInputStreamTest {
             bytes = new byte[7];
             cache.read(bytes);
             Assertions.assertEquals("56789AB", new String(bytes, enc));
+            // no mark: back to the beginning
+            cache.reset();
+            Assertions.assertEquals('0', cache.read());
+            cache.read(bytes);
+            Assertions.assertEquals("1234567", new String(bytes, enc));
         }  finally {
             try { cache.close(); } catch (IOException e) { /*NOOP*/ }
             cache.dispose();
@@ -137,6 +157,255 @@ class CachedInputStreamTest {
         }
     }
 
+    @Test
+    void testPoolMemoryAccounting() throws IOException {
+        var factory = new CachedStreamFactory(200 * 1024, 150 * 1024);
+        var cache1 = factory.newInputStream(new NullInputStream(100 * 1024));
+        var cache2 = factory.newInputStream(new NullInputStream(500));
+        toString(cache1);
+        toString(cache2);
+        assertThat(factory.getPoolCurrentMemory())
+            .isGreaterThanOrEqualTo(100 * 1024 + 500)
+            .isLessThanOrEqualTo(102 * 1024);
+
+        // spilling to file releases memory
+        var cache3 = factory.newInputStream(new NullInputStream(140 * 1024));
+        toString(cache3);
+        assertThat(cache3.isInMemory()).isFalse();
+        assertThat(factory.getPoolCurrentMemory())
+            .isLessThanOrEqualTo(102 * 1024);
+
+        cache1.dispose();
+        cache2.dispose();
+        cache3.dispose();
+        assertThat(factory.getPoolCurrentMemory()).isZero();
+    }
+
+    @Test
+    void testTransferTo(@TempDir Path tempDir) throws IOException {
+        var bytes = new byte[300 * 1024];
+        new Random(42).nextBytes(bytes);
+        // in memory, then spilled to file
+        for (long maxInstance : new long[] { 500 * 1024, 100 * 1024 }) {
+            var factory = new CachedStreamFactory(
+                    1024 * 1024, maxInstance, tempDir);
+            var cache = factory.newInputStream(
+                    new ByteArrayInputStream(bytes));
+
+            // first read: cached part, then the rest
+            cache.mark(0);
+            IOUtils.skipFully(cache, 70_000);
+            cache.reset();
+            var out = new ByteArrayOutputStream();
+            assertThat(cache.transferTo(out)).isEqualTo(bytes.length);
+            Assertions.assertArrayEquals(bytes, out.toByteArray());
+            assertThat(cache.isInMemory())
+                .isEqualTo(maxInstance > bytes.length);
+
+            // re-read from a position, to a channel
+            cache.rewind();
+            IOUtils.skipFully(cache, 5000);
+            var target = tempDir.resolve("target-" + maxInstance);
+            try (var channel = FileChannel.open(target,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                assertThat(cache.transferTo(channel))
+                    .isEqualTo(bytes.length - 5000L);
+            }
+            Assertions.assertArrayEquals(
+                    Arrays.copyOfRange(bytes, 5000, bytes.length),
+                    Files.readAllBytes(target));
+            assertThat(cache.read()).isEqualTo(-1);
+
+            // re-read, to a stream
+            cache.rewind();
+            out = new ByteArrayOutputStream();
+            assertThat(cache.transferTo(out)).isEqualTo(bytes.length);
+            Assertions.assertArrayEquals(bytes, out.toByteArray());
+            cache.dispose();
+        }
+    }
+
+    @Test
+    void testLeakListener() throws Exception {
+        var leaks = new CopyOnWriteArrayList<CachedStreamLeak>();
+        var factory = new CachedStreamFactory(200 * 1024, 150 * 1024)
+                .setLeakListener(leaks::add)
+                .setLeakTraceInterval(1);
+        factory.newInputStream("disposed").dispose();
+        readWithoutDisposing(factory);
+        for (var i = 0; i < 100 && leaks.isEmpty(); i++) {
+            System.gc();
+            Sleeper.sleepMillis(50);
+        }
+        assertThat(leaks).hasSize(1);
+        var leak = leaks.get(0);
+        assertThat(leak.getStreamType()).isEqualTo("CachedInputStream");
+        assertThat(leak.getMemoryBytes()).isPositive();
+        assertThat(leak.getCreationTrace().getStackTrace()).anyMatch(
+                e -> "readWithoutDisposing".equals(e.getMethodName()));
+        var metrics = factory.getMetrics();
+        assertThat(metrics.getLeakedStreams()).isOne();
+        assertThat(metrics.getDisposedStreams()).isOne();
+        assertThat(metrics.getLiveStreams()).isZero();
+        assertThat(metrics.getMemoryBytes()).isZero();
+    }
+    private void readWithoutDisposing(CachedStreamFactory factory)
+            throws IOException {
+        toString(factory.newInputStream(new NullInputStream(1024)));
+    }
+
+    // Writes over 2 GB to disk, so only enabled on demand.
+    @Test
+    @EnabledIfSystemProperty(named = "cachedstream.test.large", matches = "true")
+    void testLargerThan2GB() throws IOException {
+        var size = Integer.MAX_VALUE + 1024L * 1024L;
+        var factory = new CachedStreamFactory(1024 * 1024, 1024 * 1024);
+        var cache = factory.newInputStream(new NullInputStream(size));
+        try {
+            assertThat(IOUtils.copyLarge(cache, NullOutputStream.INSTANCE))
+                .isEqualTo(size);
+            assertThat(cache.isInMemory()).isFalse();
+            assertThat(cache.lengthLong()).isEqualTo(size);
+            assertThrows(ArithmeticException.class, cache::length);
+
+            cache.rewind();
+            assertThat(IOUtils.skip(cache, size - 10)).isEqualTo(size - 10);
+            cache.mark(0);
+            assertThat(IOUtils.copyLarge(cache, NullOutputStream.INSTANCE))
+                .isEqualTo(10);
+            cache.reset();
+            assertThat(cache.read(new byte[100])).isEqualTo(10);
+            assertThat(cache.read()).isEqualTo(-1);
+        }  finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    void testByteByByteReReadFileCache() throws IOException {
+        var bytes = new byte[300 * 1024];
+        for (var i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        var factory = new CachedStreamFactory(200 * 1024, 100 * 1024);
+        var cache = factory.newInputStream(new ByteArrayInputStream(bytes));
+        // first read
+        Assertions.assertArrayEquals(bytes, IOUtils.toByteArray(cache));
+        assertThat(cache.isInMemory()).isFalse();
+        cache.rewind();
+
+        // re-read one byte at a time, with marking
+        var read = new byte[bytes.length];
+        var markAt = 150 * 1024;
+        for (var i = 0; i < read.length; i++) {
+            if (i == markAt) {
+                cache.mark(read.length);
+            }
+            read[i] = (byte) cache.read();
+        }
+        Assertions.assertEquals(-1, cache.read());
+        Assertions.assertArrayEquals(bytes, read);
+
+        cache.reset();
+        var rest = IOUtils.toByteArray(cache);
+        Assertions.assertEquals(bytes.length - markAt, rest.length);
+        Assertions.assertEquals(bytes[markAt], rest[0]);
+        Assertions.assertEquals(bytes[bytes.length - 1], rest[rest.length - 1]);
+        cache.dispose();
+    }
+
+    @Test
+    void testBufferPool() throws IOException {
+        var pool = new ByteArrayPool(1024, 1000);
+        var factory = new CachedStreamFactory(200 * 1024, 100 * 1024)
+                .setBufferPool(pool);
+        var bytes = StringUtils.repeat("0123456789", 5000).getBytes();
+
+        // memory cache buffers returned when done caching
+        var cache = factory.newInputStream(new ByteArrayInputStream(bytes));
+        Assertions.assertArrayEquals(bytes, IOUtils.toByteArray(cache));
+        cache.rewind();
+        assertThat(cache.isInMemory()).isTrue();
+        assertThat(pool.getPooledCount()).isEqualTo(49);
+        Assertions.assertArrayEquals(bytes, IOUtils.toByteArray(cache));
+        cache.dispose();
+
+        // reused, and returned when spilling to file
+        var bigBytes = ArrayUtils.addAll(bytes, ArrayUtils.addAll(bytes, bytes));
+        cache = factory.newInputStream(new ByteArrayInputStream(bigBytes));
+        Assertions.assertArrayEquals(bigBytes, IOUtils.toByteArray(cache));
+        assertThat(cache.isInMemory()).isFalse();
+        assertThat(pool.getPooledCount()).isGreaterThan(49);
+        cache.dispose();
+    }
+
+    @Test
+    void testDeduplicateFileCache(@TempDir Path tempDir) throws IOException {
+        var factory = new CachedStreamFactory(
+                200 * 1024, 100 * 1024, tempDir)
+                        .setDeduplicateFileCache(true);
+        var bytes = new byte[300 * 1024];
+        for (var i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        var other = bytes.clone();
+        other[other.length - 1] = 42;
+
+        var cache1 = factory.newInputStream(new ByteArrayInputStream(bytes));
+        var cache2 = factory.newInputStream(new ByteArrayInputStream(bytes));
+        var cache3 = factory.newInputStream(new ByteArrayInputStream(other));
+        Assertions.assertArrayEquals(bytes, IOUtils.toByteArray(cache1));
+        Assertions.assertArrayEquals(bytes, IOUtils.toByteArray(cache2));
+        Assertions.assertArrayEquals(other, IOUtils.toByteArray(cache3));
+        assertThat(tempDir.toFile().list()).hasSize(2);
+
+        // identical streams share a file, deleted with the last one
+        cache1.rewind();
+        cache2.rewind();
+        cache1.dispose();
+        Assertions.assertArrayEquals(bytes, IOUtils.toByteArray(cache2));
+        assertThat(tempDir.toFile().list()).hasSize(2);
+        cache2.dispose();
+        assertThat(tempDir.toFile().list()).hasSize(1);
+        cache3.dispose();
+        assertThat(tempDir.toFile().list()).isEmpty();
+    }
+
+    @Test
+    void testCompressFileCache(@TempDir Path tempDir) throws IOException {
+        var factory = new CachedStreamFactory(
+                200 * 1024, 100 * 1024, tempDir)
+                        .setCompressFileCache(true);
+        var text = new StringBuilder();
+        for (var i = 0; text.length() < 500 * 1024; i++) {
+            text.append("Line number ").append(i).append(".\n");
+        }
+        var bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        var cache = factory.newInputStream(new ByteArrayInputStream(bytes));
+        Assertions.assertArrayEquals(bytes, IOUtils.toByteArray(cache));
+        assertThat(cache.isInMemory()).isFalse();
+        assertThat(FileUtils.sizeOfDirectory(tempDir.toFile()))
+            .isLessThan(bytes.length / 3);
+
+        // random access after rewind, one byte and many at a time
+        cache.rewind();
+        var markAt = 333_333;
+        IOUtils.skipFully(cache, markAt);
+        cache.mark(0);
+        Assertions.assertEquals(bytes[markAt] & 0xFF, cache.read());
+        var chunk = new byte[100_000];
+        IOUtils.readFully(cache, chunk);
+        cache.reset();
+        var again = new byte[100_001];
+        IOUtils.readFully(cache, again);
+        Assertions.assertArrayEquals(
+                Arrays.copyOfRange(bytes, markAt, markAt + 100_001), again);
+        Assertions.assertEquals(bytes.length, cache.lengthLong());
+        cache.dispose();
+        assertThat(tempDir.toFile().list()).isEmpty();
+    }
+
     @Test
     void testContentMatchInstanceFileCache() throws IOException {
         String content = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
@@ -1,4 +1,4 @@
-/* Copyright 2014-2022 Norconex Inc.
+/* Copyright 2014-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,15 +14,29 @@
  */
 package com.norconex.commons.lang.io;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  */
@@ -64,6 +78,212 @@ class CachedOutputStreamTest {
         }
     }
 
+    @Test
+    void testWriteWithOffset() throws IOException {
+        var factory = new CachedStreamFactory(200, 100);
+        var cache = factory.newOuputStream();
+        cache.write("__0123456789__".getBytes(), 2, 10);
+        try (var is = cache.getInputStream()) {
+            Assertions.assertEquals("0123456789", readCacheToString(is));
+            is.dispose();
+        }
+        assertThat(factory.getPoolCurrentMemory()).isZero();
+    }
+
+    @Test
+    void testWriteBehind() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var factory = new CachedStreamFactory(100 * 1024, 50 * 1024)
+                    .setWriteBehindExecutor(executor)
+                    .setWriteBehindMaxPending(2);
+            var bytes = new byte[500 * 1024];
+            for (var i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (i % 251);
+            }
+            var out = factory.newOuputStream();
+            // mix of single bytes and chunks of various sizes
+            var i = 0;
+            var len = 1;
+            while (i < bytes.length) {
+                if (len == 1) {
+                    out.write(bytes[i]);
+                } else {
+                    out.write(bytes, i, Math.min(len, bytes.length - i));
+                }
+                i += len;
+                len = len * 7 % 100_003;
+            }
+            var in = out.getInputStream();
+            assertThat(in.isInMemory()).isFalse();
+            Assertions.assertArrayEquals(bytes, in.readAllBytes());
+            in.dispose();
+            assertThat(factory.getPoolCurrentMemory()).isZero();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testWriteBehindRuntimeError(@TempDir Path tempDir)
+            throws IOException {
+        var file = Files.createFile(tempDir.resolve("cache"));
+        var executor = Executors.newSingleThreadExecutor();
+        // writing to a read-only channel throws a RuntimeException
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var out = new WriteBehindOutputStream(channel, executor, 2);
+            // reported on write or flush, depending on timing
+            assertThatExceptionOfType(IOException.class)
+                    .isThrownBy(() -> {
+                        out.write(new byte[
+                                WriteBehindOutputStream.SEGMENT_SIZE]);
+                        out.flush();
+                    })
+                    .withRootCauseInstanceOf(
+                            NonWritableChannelException.class);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testWriteBehindErrorCleanup(@TempDir Path tempDir)
+            throws IOException {
+        // writing from an interrupted thread closes the channel and fails
+        Executor executor = command -> new Thread(() -> {
+            Thread.currentThread().interrupt();
+            command.run();
+        }).start();
+        var factory = new CachedStreamFactory(100 * 1024, 50 * 1024, tempDir)
+                .setWriteBehindExecutor(executor);
+
+        // failing when getting the input stream
+        var out1 = factory.newOuputStream();
+        assertThatExceptionOfType(IOException.class).isThrownBy(() -> {
+            out1.write(new byte[60 * 1024]);
+            out1.getInputStream();
+        });
+        // failing when disposing
+        var out2 = factory.newOuputStream();
+        assertThatExceptionOfType(IOException.class).isThrownBy(() -> {
+            out2.write(new byte[60 * 1024]);
+            out2.dispose();
+        });
+        // write errors are reported once, disposing cleans up regardless
+        try {
+            out1.dispose();
+        } catch (IOException e) {
+            // NOOP
+        }
+        out1.dispose();
+        out2.dispose();
+
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).isEmpty();
+        }
+        var metrics = factory.getMetrics();
+        assertThat(metrics.getLiveStreams()).isZero();
+        assertThat(metrics.getFileCaches()).isZero();
+        assertThat(factory.getPoolCurrentMemory()).isZero();
+    }
+
+    @Test
+    void testCompressFileCache() throws IOException {
+        var factory = new CachedStreamFactory(100 * 1024, 50 * 1024)
+                .setCompressFileCache(true);
+        var text = StringUtils.repeat("Compressible text. ", 20_000);
+        var out = factory.newOuputStream();
+        out.write(text.getBytes(UTF_8));
+        out.write('!');
+        var in = out.getInputStream();
+        assertThat(in.isInMemory()).isFalse();
+        assertThat(in.lengthLong()).isEqualTo(text.length() + 1L);
+        assertThat(IOUtils.toString(in, UTF_8)).isEqualTo(text + "!");
+        in.dispose();
+    }
+
+    @Test
+    void testMetrics() throws IOException {
+        var factory = new CachedStreamFactory(100 * 1024, 50 * 1024);
+        var out = factory.newOuputStream();
+        out.write(new byte[40 * 1024]);
+        out.write(new byte[20 * 1024]);
+        var metrics = factory.getMetrics();
+        assertThat(metrics.getCreatedStreams()).isOne();
+        assertThat(metrics.getLiveStreams()).isOne();
+        assertThat(metrics.getSpillCount()).isOne();
+        assertThat(metrics.getSpilledBytes()).isEqualTo(40 * 1024);
+        assertThat(metrics.getFileCaches()).isOne();
+        assertThat(metrics.getMemoryBytes()).isZero();
+        assertThat(metrics.getSpillTimeHistogram().values()
+                .stream().mapToLong(Long::longValue).sum()).isOne();
+
+        // file cache is handed over to the input stream
+        var in = out.getInputStream();
+        metrics = factory.getMetrics();
+        assertThat(metrics.getCreatedStreams()).isEqualTo(2);
+        assertThat(metrics.getLiveStreams()).isOne();
+        assertThat(metrics.getFileCaches()).isOne();
+        in.dispose();
+        metrics = factory.getMetrics();
+        assertThat(metrics.getLiveStreams()).isZero();
+        assertThat(metrics.getDisposedStreams()).isEqualTo(2);
+        assertThat(metrics.getFileCaches()).isZero();
+        assertThat(metrics.getLeakedStreams()).isZero();
+    }
+
+    @Test
+    void testSpillPolicy() throws Exception {
+        var factory = new CachedStreamFactory(10 * 1024, 10 * 1024)
+                .setSpillPolicy(SpillPolicy.LARGEST)
+                .setMaxMemoryWait(Duration.ofSeconds(10));
+        var large = factory.newOuputStream();
+        large.write(new byte[8 * 1024]);
+        var small = factory.newOuputStream();
+        // waits for the largest stream to spill on its next write
+        var smallWrite = CompletableFuture.runAsync(() -> {
+            try {
+                small.write(new byte[4 * 1024]);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (large.getMemCacheSize() > 0) {
+            large.write(1);
+            Thread.sleep(10);
+        }
+        smallWrite.get();
+        assertThat(large.getMemCacheSize()).isZero();
+        assertThat(small.getMemCacheSize()).isEqualTo(4 * 1024);
+        large.dispose();
+        small.dispose();
+        assertThat(factory.getPoolCurrentMemory()).isZero();
+    }
+
+    @Test
+    void testBackPressure() throws Exception {
+        var factory = new CachedStreamFactory(10 * 1024, 10 * 1024)
+                .setSpillPolicy((requester, candidates) -> null)
+                .setMaxMemoryWait(Duration.ofSeconds(10));
+        var first = factory.newOuputStream();
+        first.write(new byte[8 * 1024]);
+        var second = factory.newOuputStream();
+        // waits until the first one is disposed
+        var secondWrite = CompletableFuture.runAsync(() -> {
+            try {
+                second.write(new byte[4 * 1024]);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertThat(secondWrite).isNotDone();
+        first.dispose();
+        secondWrite.get();
+        assertThat(second.getMemCacheSize()).isEqualTo(4 * 1024);
+        second.dispose();
+    }
+
     @Test
     void testMisc() throws IOException {
         var factory = new CachedStreamFactory(200, 10);
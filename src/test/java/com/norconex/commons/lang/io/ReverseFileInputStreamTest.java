@@ -21,8 +21,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -40,4 +43,31 @@ class ReverseFileInputStreamTest {
             assertThat(IOUtils.toString(is, UTF_8)).isEqualTo("fe\ndc\nba");
         }
     }
+
+    @Test
+    void testBlocks() throws IOException {
+        var bytes = new byte[10_000];
+        new Random(7).nextBytes(bytes);
+        var file = tempDir.resolve("file.bin");
+        Files.write(file, bytes);
+        var reversed = bytes.clone();
+        ArrayUtils.reverse(reversed);
+
+        // bulk reads spanning blocks
+        try (InputStream is = new ReverseFileInputStream(file, 7)) {
+            assertThat(IOUtils.toByteArray(is)).isEqualTo(reversed);
+        }
+        // mixed single byte reads and skips
+        try (InputStream is = new ReverseFileInputStream(file, 1000)) {
+            assertThat(is.read()).isEqualTo(reversed[0] & 0xFF);
+            assertThat(is.skip(2500)).isEqualTo(2500);
+            assertThat(is.available()).isEqualTo(7499);
+            var rest = new byte[7499];
+            IOUtils.readFully(is, rest);
+            assertThat(rest).isEqualTo(
+                    Arrays.copyOfRange(reversed, 2501, 10_000));
+            assertThat(is.read()).isEqualTo(-1);
+            assertThat(is.skip(10)).isZero();
+        }
+    }
 }
@@ -1,4 +1,4 @@
-/* Copyright 2015-2020 Norconex Inc.
+/* Copyright 2015-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,11 +16,19 @@ package com.norconex.commons.lang.io;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import com.norconex.commons.lang.Sleeper;
+
 /**
  */
 class TextReaderTest {
@@ -68,6 +76,106 @@ class TextReaderTest {
                 "Wrong number of characters returned.");
     }
 
+    @Test
+    void testReadChunk() throws IOException {
+        var reader = new TextReader(new StringReader(
+                "First sentence. Second sentence. Third one"), 20);
+        var chunk = reader.readChunk();
+        Assertions.assertEquals("First sentence. ", chunk.toString());
+        Assertions.assertTrue(chunk.isReadOnly());
+        Assertions.assertEquals("Second sentence. ",
+                reader.readChunk().toString());
+        Assertions.assertEquals("Third one", reader.readChunk().toString());
+        Assertions.assertNull(reader.readChunk());
+        reader.close();
+    }
+
+    @Test
+    void testChunksCoverAllText() throws IOException {
+        var b = new StringBuilder();
+        for (var i = 0; i < 5000; i++) {
+            b.append("Word").append(i).append(i % 7 == 0 ? ". " : " ");
+            if (i % 50 == 0) {
+                b.append("\n\n");
+            }
+        }
+        var text = b.toString();
+        var reader = new TextReader(new StringReader(text), 333);
+        var joined = new StringBuilder();
+        CharSequence chunk;
+        while ((chunk = reader.readChunk()) != null) {
+            Assertions.assertTrue(chunk.length() <= 333);
+            joined.append(chunk);
+        }
+        reader.close();
+        Assertions.assertEquals(text, joined.toString());
+    }
+
+    @Test
+    void testStream() throws IOException {
+        var expected = new ArrayList<String>();
+        try (var reader = getTextReader("funkyParagraphBreaks.txt", 60)) {
+            String text;
+            while ((text = reader.readText()) != null) {
+                expected.add(text);
+            }
+        }
+        try (var stream = getTextReader(
+                "funkyParagraphBreaks.txt", 60).stream()) {
+            Assertions.assertEquals(
+                    expected, stream.collect(Collectors.toList()));
+        }
+        try (var stream = getTextReader(
+                "funkyParagraphBreaks.txt", 60).stream().parallel()) {
+            Assertions.assertEquals(
+                    expected, stream.collect(Collectors.toList()));
+        }
+        try (var stream = getTextReader(
+                "funkyParagraphBreaks.txt", 60).stream(false).parallel()) {
+            var actual = stream.collect(Collectors.toList());
+            Assertions.assertEquals(expected.size(), actual.size());
+            Assertions.assertTrue(actual.containsAll(expected));
+        }
+    }
+
+    @Test
+    void testOrderedParallelStream() throws Exception {
+        var b = new StringBuilder();
+        for (var i = 0; i < 200; i++) {
+            b.append("Paragraph ").append(i).append(".\n\n");
+        }
+        var expected = new ArrayList<String>();
+        try (var reader = new TextReader(new StringReader(b.toString()), 20)) {
+            String text;
+            while ((text = reader.readText()) != null) {
+                expected.add(text);
+            }
+        }
+
+        var running = new AtomicInteger();
+        var concurrent = new AtomicInteger();
+        var pool = new ForkJoinPool(4);
+        try (var stream = new TextReader(
+                new StringReader(b.toString()), 20).stream().parallel()) {
+            var actual = pool.submit(() -> stream.map(text -> {
+                if (running.incrementAndGet() > 1) {
+                    concurrent.incrementAndGet();
+                }
+                Sleeper.sleepMillis(5);
+                running.decrementAndGet();
+                return text;
+            }).collect(Collectors.toList())).get(30, TimeUnit.SECONDS);
+            Assertions.assertEquals(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+        // not only the first chunks read ahead are processed in parallel
+        Assertions.assertTrue(concurrent.get() > Math.max(
+                expected.size() / 2,
+                Runtime.getRuntime().availableProcessors() - 1),
+                "Chunks processed concurrently: " + concurrent.get());
+    }
+
     private TextReader getTextReader(String file, int readSize) {
         return new TextReader(new InputStreamReader(
                 getClass().getResourceAsStream(file), StandardCharsets.UTF_8),
@@ -0,0 +1,84 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.text;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PatternCacheTest {
+
+    private int originalMaxSize;
+
+    @BeforeEach
+    void beforeEach() {
+        originalMaxSize = PatternCache.getMaxSize();
+        PatternCache.clear();
+    }
+
+    @AfterEach
+    void afterEach() {
+        PatternCache.setMaxSize(originalMaxSize);
+        PatternCache.clear();
+    }
+
+    @Test
+    void testHitsAndMisses() {
+        var p1 = new Regex("ab+c").compile();
+        var p2 = new Regex("ab+c").compile();
+        var p3 = new Regex("ab+c").ignoreCase().compile();
+        var p4 = new Regex("ab+c").ignoreDiacritic().compile();
+
+        assertThat(p2).isSameAs(p1);
+        assertThat(p3).isNotSameAs(p1);
+        assertThat(p4).isNotSameAs(p1);
+        assertThat(p4.pattern()).isEqualTo("a\\p{M}*b\\p{M}*+c\\p{M}*");
+
+        var stats = PatternCache.getStats();
+        assertThat(stats.getHits()).isEqualTo(1);
+        assertThat(stats.getMisses()).isEqualTo(3);
+        assertThat(stats.getSize()).isEqualTo(3);
+        assertThat(stats.getEvictions()).isZero();
+    }
+
+    @Test
+    void testEviction() {
+        PatternCache.setMaxSize(2);
+        var p1 = new Regex("a").compile();
+        new Regex("b").compile();
+        new Regex("c").compile();
+        assertThat(PatternCache.getStats().getSize()).isEqualTo(2);
+        assertThat(PatternCache.getStats().getEvictions()).isEqualTo(1);
+        // oldest one was evicted
+        assertThat(new Regex("a").compile()).isNotSameAs(p1);
+
+        PatternCache.setMaxSize(1);
+        assertThat(PatternCache.getStats().getSize()).isEqualTo(1);
+        assertThat(PatternCache.getStats().getEvictions()).isEqualTo(3);
+    }
+
+    @Test
+    void testDisabled() {
+        PatternCache.setMaxSize(0);
+        assertThat(new Regex("a").compile())
+            .isNotSameAs(new Regex("a").compile());
+        assertThat(PatternCache.getStats().getSize()).isZero();
+        assertThatExceptionOfType(IllegalArgumentException.class)
+            .isThrownBy(() -> PatternCache.setMaxSize(-1)); //NOSONAR
+    }
+}
@@ -16,6 +16,8 @@ package com.norconex.commons.lang.text;
 
 import static org.assertj.core.api.Assertions.assertThatNoException;
 
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
 import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.Assertions;
@@ -28,6 +30,20 @@ import com.norconex.commons.lang.bean.BeanMapper;
  */
 class RegexFieldValueExtractorTest {
 
+    @Test
+    void testExtractIgnoringDiacritics() {
+        var regex = new Regex("(cafe|noel): ([^,]+)")
+                .ignoreCase()
+                .ignoreDiacritic();
+        var fields = new RegexFieldValueExtractor(regex, 1, 2)
+                .extractFieldValues("Café: crème, Noël: bûche");
+        // extracted from the decomposed (NFD) text
+        Assertions.assertEquals(Normalizer.normalize("crème", Form.NFD),
+                fields.getString(Normalizer.normalize("Café", Form.NFD)));
+        Assertions.assertEquals(Normalizer.normalize("bûche", Form.NFD),
+                fields.getString(Normalizer.normalize("Noël", Form.NFD)));
+    }
+
     @Test
     void testExtractFields() {
 
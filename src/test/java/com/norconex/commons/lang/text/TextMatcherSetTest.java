@@ -0,0 +1,127 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.text;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class TextMatcherSetTest {
+
+    private static final List<String> TEXTS = List.of(
+            "", "  ", "ushers", "USHERS", "she sells", "his", "hers",
+            "éléphant", "elephant", "a1b22c333", "x", " he ", "abc\ndef");
+
+    @Test
+    void testOverlappingLiterals() {
+        var he = TextMatcher.basic("he").partial();
+        var she = TextMatcher.basic("she").partial();
+        var his = TextMatcher.basic("his").partial();
+        var hers = TextMatcher.csv("nope, hers").partial();
+        var set = new TextMatcherSet(he, she, his, hers);
+
+        assertThat(set.matching("ushers")).containsExactly(he, she, hers);
+        assertThat(set.matching("this")).containsExactly(his);
+        assertThat(set.matching("nothing")).isEmpty();
+        assertThat(set.anyMatches("ushers")).isTrue();
+        assertThat(set.anyMatches("nothing")).isFalse();
+    }
+
+    @Test
+    void testEmptySet() {
+        var set = new TextMatcherSet((List<TextMatcher>) null);
+        assertThat(set.isEmpty()).isTrue();
+        assertThat(set.anyMatches("a")).isFalse();
+        assertThat(set.anyMatchesOrEmpty("a")).isTrue();
+        assertThat(set.matching("a")).isEmpty();
+    }
+
+    @Test
+    void testCopiedOnCreation() {
+        var tm = TextMatcher.basic("abc");
+        var set = new TextMatcherSet(tm);
+        tm.setPattern("xyz");
+        assertThat(set.anyMatches("abc")).isTrue();
+        assertThat(set.matching("abc")).containsExactly(tm);
+    }
+
+    @Test
+    void testSameAsIndividualMatches() {
+        var matchers = new ArrayList<TextMatcher>();
+        for (var flags = 0; flags < 32; flags++) {
+            for (TextMatcher tm : List.of(
+                    TextMatcher.basic("he"),
+                    TextMatcher.basic("HERS"),
+                    TextMatcher.basic(""),
+                    TextMatcher.csv("his, she ,elephant"),
+                    TextMatcher.wildcard("*e?s"),
+                    TextMatcher.regex("[a-z]\\d+"),
+                    TextMatcher.regex("(\\d)\\1"),
+                    TextMatcher.regex("^ELE.*"),
+                    new TextMatcher())) {
+                matchers.add(tm
+                        .setIgnoreCase((flags & 1) != 0)
+                        .setPartial((flags & 2) != 0)
+                        .setTrim((flags & 4) != 0)
+                        .setMatchEmpty((flags & 8) != 0)
+                        .setIgnoreDiacritic((flags & 16) != 0));
+            }
+        }
+        // test each matchers on their own, then all together
+        for (TextMatcher tm : matchers) {
+            assertSameAsIndividualMatches(List.of(tm));
+            assertSameAsIndividualMatches(List.of(
+                    tm, new TextMatcher(tm).negateMatches()));
+        }
+        assertSameAsIndividualMatches(matchers.stream()
+                .filter(tm -> tm.isSet())
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testRegexNotMergeable() {
+        for (TextMatcher tm : List.of(
+                // unterminated quote
+                TextMatcher.regex("s\\Q|x").partial(),
+                // comments mode
+                TextMatcher.regex("(?x) h e  # comment").partial(),
+                TextMatcher.regex("(?ix)E L E # comment").partial())) {
+            var matchers = List.of(tm,
+                    TextMatcher.regex("[a-z]\\d+"),
+                    TextMatcher.regex("^x$").partial());
+            assertSameAsIndividualMatches(matchers);
+        }
+        assertThat(new TextMatcherSet(TextMatcher.regex("s\\Q|x").partial())
+                .anyMatches("s|x")).isTrue();
+    }
+
+    private void assertSameAsIndividualMatches(List<TextMatcher> matchers) {
+        var set = new TextMatcherSet(matchers);
+        for (String text : TEXTS) {
+            assertThat(set.matching(text))
+                    .as("%s with \"%s\"", matchers, text)
+                    .containsExactlyElementsOf(matchers.stream()
+                            .filter(tm -> tm.matches(text))
+                            .collect(Collectors.toList()));
+            assertThat(set.anyMatches(text))
+                    .as("%s with \"%s\"", matchers, text)
+                    .isEqualTo(TextMatcher.anyMatches(matchers, text));
+        }
+    }
+}
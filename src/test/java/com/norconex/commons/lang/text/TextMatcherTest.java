@@ -17,6 +17,7 @@ package com.norconex.commons.lang.text;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -24,6 +25,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvFileSource;
+import org.junit.jupiter.params.provider.EnumSource;
 
 import com.norconex.commons.lang.bean.BeanMapper;
 import com.norconex.commons.lang.text.TextMatcher.Method;
@@ -110,6 +112,28 @@ class TextMatcherTest {
                 .isEqualTo("aaa");
     }
 
+    @Test
+    void testIgnoreDiacriticMatchesSameAsReplace() {
+        for (String pattern : List.of(
+                "caf.", "cafe", "CAFÉ", "caf[a-z]", "c.f\\w", "f.")) {
+            for (String text : List.of(
+                    "café", "cafe\u0301", "cafe", "CAFÉ", "un café")) {
+                var tm = TextMatcher.regex(pattern)
+                        .ignoreDiacritic()
+                        .ignoreCase();
+                assertThat(tm.matches(text))
+                        .as("\"%s\" with \"%s\"", pattern, text)
+                        .isEqualTo(tm.replace(text, "#").equals("#"));
+                tm.partial();
+                assertThat(tm.matches(text))
+                        .as("\"%s\" partial with \"%s\"", pattern, text)
+                        .isEqualTo(tm.replace(text, "#").contains("#"));
+            }
+        }
+        assertThat(TextMatcher.regex("caf.").ignoreDiacritic()
+                .matches("café")).isFalse();
+    }
+
     @Test
     void testTrimAndEmpty() {
         assertThat(TextMatcher.basic("blah").matches(" blah ")).isFalse();
@@ -141,6 +165,61 @@ class TextMatcherTest {
         ).isEqualTo(Pattern.compile("ab.*ef.h").pattern());
     }
 
+    @Test
+    void testCompiledPatternCache() {
+        var tm = TextMatcher.wildcard("ab*ef?h");
+        var pattern = tm.toRegexPattern();
+        assertThat(tm.matches("abcdefgh")).isTrue();
+        assertThat(tm.toRegexPattern()).isSameAs(pattern);
+
+        // unrelated to compilation
+        tm.setReplaceAll(true).setNegateMatches(true);
+        assertThat(tm.toRegexPattern()).isSameAs(pattern);
+
+        // compilation affecting changes
+        tm.setIgnoreCase(true).setPartial(true);
+        assertThat(tm.toRegexPattern()).isNotSameAs(pattern);
+        assertThat(tm.matches("ABCDEFGH")).isFalse(); // negated
+        tm.setNegateMatches(false).setPattern("xyz");
+        assertThat(tm.matches("ABCDEFGH")).isFalse();
+        assertThat(tm.matches("__XYZ__")).isTrue();
+        tm.setMatchEmpty(true);
+        assertThat(tm.matches("")).isTrue();
+        tm.setTrim(true);
+        assertThat(tm.matches("  ")).isTrue();
+
+        var copy = new TextMatcher(tm);
+        assertThat(copy).isEqualTo(tm);
+        assertThat(copy.toRegexPattern()).isSameAs(tm.toRegexPattern());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Method.class, names = { "BASIC", "CSV", "WILDCARD" })
+    void testLiteralMatchersSameAsRegex(Method method) {
+        var patterns = List.of(
+                "", ",", " , ", "abc", "a?c", "*", "?", "a*", "*c", "a**c",
+                "?b?", "a*b*c", "ÉtÉ", "été, ete ,abc", " abc, x ",
+                "a.b", "(x|y)", "1+2", "a,,b", "\uD83D\uDE00?", "*\uD83D\uDE00");
+        var texts = List.of(
+                "abc", "ABC", "aXbYc", "abcabc", "xabcx", "a.b", "(x|y)",
+                "1+2", "été", "ÉTÉ", "x", "a\nc", "abbbbbbbc",
+                "ac", "\uD83D\uDE00z", "z\uD83D\uDE00", " abc ");
+        for (String pattern : patterns) {
+            for (String text : texts) {
+                for (var flags = 0; flags < 8; flags++) {
+                    var tm = new TextMatcher(pattern, method)
+                            .setIgnoreCase((flags & 1) != 0)
+                            .setPartial((flags & 2) != 0)
+                            .setTrim((flags & 4) != 0);
+                    var m = tm.toRegexMatcher(text);
+                    var expected = tm.isPartial() ? m.find() : m.matches();
+                    assertThat(tm.matches(text)).as(
+                            "%s vs \"%s\"", tm, text).isEqualTo(expected);
+                }
+            }
+        }
+    }
+
     @Test
     void testWriteRead() {
         var tm = new TextMatcher()
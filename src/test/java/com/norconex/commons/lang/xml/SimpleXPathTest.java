@@ -0,0 +1,142 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.xml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.xml.xpath.XPathConstants;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+class SimpleXPathTest {
+
+    private static final String[] DOCUMENTS = {
+        "<r/>",
+        "<r c='0'><a/><a c='1'><b/><b c='2'/></a><x><a><b c='3'/></a></x>"
+                + "<a><!-- c --><b c='4'>text</b><b c='5'/></a><b c='6'/></r>",
+        "<r><a><b><a><b c='1'/></a></b></a><a-b.c_d x='y'/>"
+                + "<été ça='ça'/></r>",
+        // elements and attributes XPath may match by local name
+        "<r xmlns:p='urn:p'><p:a><b c='1'/></p:a><a><b c='2'/></a></r>",
+        "<r><a p:c='1' xmlns:p='urn:p'/><a c='2'/></r>",
+        "<r><a xmlns='urn:x'><b c='1'/></a></r>",
+        "<r xmlns='urn:x'><a><b c='1'/></a></r>",
+    };
+
+    private static final String[] EXPRESSIONS = {
+        "a", "b", "a/b", "a/b/@c", "@c", "a/@c", "x/a/b/@c", "a/b/a/b/@c",
+        "a-b.c_d/@x", "été/@ça", "none", "a/none", "a/b/@none",
+    };
+
+    @ParameterizedTest
+    @MethodSource("conformanceArgs")
+    void testConformance(String doc, boolean nsAware, String expression)
+            throws Exception {
+        var factory = XMLUtil.createDocumentBuilderFactory();
+        factory.setNamespaceAware(nsAware);
+        var root = factory.newDocumentBuilder().parse(
+                new ByteArrayInputStream(doc.getBytes(UTF_8)))
+                        .getDocumentElement();
+        var xpath = XPathUtil.newXPathExpression(expression);
+        var simple = SimpleXPath.parse(expression);
+        assertThat(simple).isNotNull();
+
+        var all = simple.selectAll(root);
+        if (all != null) {
+            assertThat(all).containsExactlyElementsOf(toList((NodeList)
+                    xpath.evaluate(root, XPathConstants.NODESET)));
+        }
+        var first = simple.selectFirst(root);
+        if (first != null) {
+            var expected = (Node) xpath.evaluate(root, XPathConstants.NODE);
+            if (expected == null) {
+                assertThat(first).isEmpty();
+            } else {
+                assertThat(first).containsExactly(expected);
+            }
+        }
+        // only documents with namespaces or prefixes may need XPath
+        if (!doc.contains("xmlns")) {
+            assertThat(all).isNotNull();
+            assertThat(first).isNotNull();
+        }
+    }
+
+    static Stream<Arguments> conformanceArgs() {
+        List<Arguments> args = new ArrayList<>();
+        for (String doc : DOCUMENTS) {
+            for (String expression : EXPRESSIONS) {
+                args.add(Arguments.of(doc, false, expression));
+                args.add(Arguments.of(doc, true, expression));
+            }
+        }
+        return args.stream();
+    }
+
+    @Test
+    void testUnsupportedExpressions() {
+        for (String expression : new String[] {
+                null, "", "/a", "a/", "a//b", "//a", ".", "..", "./a", "*",
+                "a/*", "a[1]", "a[@c='1']", "@*", "@", "a/@c/b", "@c/a",
+                "p:a", "a/@p:c", "@xmlns", "child::a", "a | b", "text()",
+                "a/text()", "count(a)", "1a", "-a", "a b", "a/ b"}) {
+            assertThat(SimpleXPath.parse(expression)).as(expression).isNull();
+        }
+    }
+
+    @Test
+    void testXMLGetters() {
+        var xml = XML.of("<r c='0'><a c='1'><b>B1</b></a><a c='2'><b>B2</b>"
+                + "<b>B3</b></a><p:a xmlns:p='urn:p'/></r>").create();
+        // prefixed element seen as a possible "a" match: uses XPath
+        assertThat(xml.getString("a/b")).isEqualTo("B1");
+        assertThat(xml.getStringList("a/b")).containsExactly("B1", "B2", "B3");
+        assertThat(xml.getString("@c")).isEqualTo("0");
+        assertThat(xml.getStringList("a/@c")).containsExactly("1", "2");
+        assertThat(xml.contains("a/b")).isTrue();
+        assertThat(xml.contains("a/c")).isFalse();
+
+        xml = XML.of("<r c='0'><a c='1'><b>B1</b></a><a c='2'><b>B2</b>"
+                + "<b>B3</b></a></r>").create();
+        assertThat(xml.getString("a/b")).isEqualTo("B1");
+        assertThat(xml.getStringList("a/b")).containsExactly("B1", "B2", "B3");
+        assertThat(xml.getString("@c")).isEqualTo("0");
+        assertThat(xml.getString("@none", "default")).isEqualTo("default");
+        assertThat(xml.getStringList("a/@c")).containsExactly("1", "2");
+        assertThat(xml.getXMLList("a")).hasSize(2);
+        assertThat(xml.getXML("a").getString("@c")).isEqualTo("1");
+        assertThat(xml.contains("a/b")).isTrue();
+        assertThat(xml.contains("a/c")).isFalse();
+    }
+
+    private static List<Node> toList(NodeList nodeList) {
+        List<Node> list = new ArrayList<>();
+        for (var i = 0; i < nodeList.getLength(); i++) {
+            list.add(nodeList.item(i));
+        }
+        return list;
+    }
+}
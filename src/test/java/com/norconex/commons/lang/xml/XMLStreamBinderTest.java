@@ -0,0 +1,142 @@
+/* Copyright 2023 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.commons.lang.xml;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.norconex.commons.lang.ResourceLoader;
+
+import lombok.Data;
+
+class XMLStreamBinderTest {
+
+    @Test
+    void testBindXML() {
+        var plantPrice = new MutableInt();
+        var bookPages = new MutableInt();
+        List<String> plantPaths = new ArrayList<>();
+        var count = new XMLStreamBinder()
+                .onXML("/catalog/plant", xml -> {
+                    plantPrice.add(xml.getInteger("price"));
+                    plantPaths.add(xml.getName());
+                })
+                .onXML(c -> "book".equals(c.getLocalName()),
+                        xml -> bookPages.add(xml.getInteger("@pageCount")))
+                .bind(ResourceLoader.getXmlString(XMLStreamTest.class));
+
+        assertThat(count).isEqualTo(7);
+        // same totals as XMLStreamTest
+        assertThat(plantPrice.intValue()).isEqualTo(1208);
+        assertThat(bookPages.intValue()).isEqualTo(303);
+        assertThat(plantPaths).containsExactly(
+                "botanic:plant", "botanic:plant", "agriculture:plant", "plant");
+    }
+
+    @Test
+    void testBindObject() {
+        List<Book> books = new ArrayList<>();
+        List<String> other = new ArrayList<>();
+        new XMLStreamBinder()
+                .onObject("/books/book", Book.class, books::add)
+                // not reached: already matched by the first binding
+                .onXML("/books/book", xml -> other.add(xml.getName()))
+                // not reached: nested in a matching element
+                .onXML("/books/book/title", xml -> other.add(xml.getName()))
+                .onXML("/books/magazine/title",
+                        xml -> other.add(xml.getString(".")))
+                .bind(new StringReader("""
+                    <books>
+                      <book><title>Title 1</title></book>
+                      <magazine><title>Magazine</title></magazine>
+                      <book class="%s">
+                        <title>Title 2</title>
+                      </book>
+                      <book/>
+                    </books>""".formatted(SpecialBook.class.getName())));
+
+        assertThat(books).hasSize(3);
+        assertThat(books.get(0)).isExactlyInstanceOf(Book.class);
+        assertThat(books.get(0).getTitle()).isEqualTo("Title 1");
+        assertThat(books.get(1)).isExactlyInstanceOf(SpecialBook.class);
+        assertThat(books.get(1).getTitle()).isEqualTo("Title 2");
+        assertThat(books.get(2).getTitle()).isNull();
+        assertThat(other).containsExactly("Magazine");
+    }
+
+    @Test
+    void testBindLargeFile(@TempDir Path tempDir) throws IOException {
+        var file = tempDir.resolve("large.xml");
+        var numBooks = 20_000;
+        try (Writer w = Files.newBufferedWriter(file)) {
+            w.write("<books>");
+            for (var i = 0; i < numBooks; i++) {
+                w.write("<book><title>Title " + i + "</title></book>");
+            }
+            w.write("</books>");
+        }
+
+        var count = new MutableInt();
+        new XMLStreamBinder()
+                .onObject("/books/book", Book.class, b -> {
+                    assertThat(b.getTitle()).isEqualTo(
+                            "Title " + count.getAndIncrement());
+                })
+                .bind(file);
+        assertThat(count.intValue()).isEqualTo(numBooks);
+
+        // files larger than read buffers can also be iterated
+        assertThat(XML.stream(file)).hasSize(numBooks * 2 + 1);
+    }
+
+    @Test
+    void testErrors() {
+        var binder = new XMLStreamBinder().onXML("/a", xml -> {});
+        assertThatExceptionOfType(XMLException.class).isThrownBy(
+                () -> binder.bind(new StringReader("<a><b></a>")));
+        var failing = new XMLStreamBinder().onXML("/a", xml -> {
+            throw new IllegalStateException("Just testing.");
+        });
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(
+                () -> failing.bind("<a/>"));
+    }
+
+    @Data
+    static class Book implements XMLConfigurable {
+        private String title;
+        @Override
+        public void loadFromXML(XML xml) {
+            setTitle(xml.getString("title"));
+        }
+        @Override
+        public void saveToXML(XML xml) {
+            xml.addElement("title", title);
+        }
+    }
+    static class SpecialBook extends Book {
+    }
+}
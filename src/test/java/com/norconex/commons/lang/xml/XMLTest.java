@@ -28,6 +28,7 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -315,6 +316,41 @@ class XMLTest {
 
     }
 
+    @Test
+    void testValidateSchemaCache(@TempDir Path tempDir)
+            throws Exception {
+        var xsdURL = MockProxySettings.class.getResource(
+                "MockProxySettings.xsd");
+        var schema = XML.getSchema(MockProxySettings.class, xsdURL);
+        assertThat(XML.getSchema(MockProxySettings.class, xsdURL))
+                .isSameAs(schema);
+
+        // so are those including modified XSD files
+        var includedFile = Path.of(MockProxySettings.class.getResource(
+                "MockEncryptionKey.xsd").toURI());
+        var includedTime = Files.getLastModifiedTime(includedFile);
+        try {
+            Files.setLastModifiedTime(includedFile, FileTime.fromMillis(
+                    includedTime.toMillis() + 10_000));
+            assertThat(XML.getSchema(MockProxySettings.class, xsdURL))
+                    .isNotSameAs(schema);
+        } finally {
+            Files.setLastModifiedTime(includedFile, includedTime);
+        }
+
+        // modified XSD files are compiled again
+        var xsdFile = tempDir.resolve("MockHost.xsd");
+        Files.copy(Path.of(MockHost.class.getResource(
+                "MockHost.xsd").toURI()), xsdFile);
+        xsdURL = xsdFile.toUri().toURL();
+        schema = XML.getSchema(MockHost.class, xsdURL);
+        assertThat(XML.getSchema(MockHost.class, xsdURL)).isSameAs(schema);
+        Files.setLastModifiedTime(xsdFile, FileTime.fromMillis(
+                Files.getLastModifiedTime(xsdFile).toMillis() + 10_000));
+        assertThat(XML.getSchema(MockHost.class, xsdURL))
+                .isNotSameAs(schema);
+    }
+
     @Test
     void testGetURL() throws MalformedURLException {
         var xml = XML.of(
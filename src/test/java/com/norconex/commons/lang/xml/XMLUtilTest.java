@@ -1,4 +1,4 @@
-/* Copyright 2019-2022 Norconex Inc.
+/* Copyright 2019-2023 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
 package com.norconex.commons.lang.xml;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -23,14 +24,18 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
 import javax.xml.validation.Schema;
 import javax.xml.validation.Validator;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
@@ -66,6 +71,54 @@ class XMLUtilTest {
                 xml.toString()))).isNotNull();
     }
 
+    @Test
+    void testPools() throws SAXException {
+        DocumentBuilder builder = XMLUtil.withDocumentBuilder(b -> b);
+        DocumentBuilder sameBuilder = XMLUtil.withDocumentBuilder(b -> b);
+        assertThat(sameBuilder).isSameAs(builder);
+        // recursive borrowing gets a different instance
+        boolean different = XMLUtil.withDocumentBuilder(
+                b -> XMLUtil.withDocumentBuilder(b2 -> b2 != b));
+        assertThat(different).isTrue();
+        // returned to the pool even on failure
+        assertThatExceptionOfType(SAXException.class).isThrownBy(
+                () -> XMLUtil.withDocumentBuilder(b -> b.parse(
+                        new InputSource(new StringReader("<bad")))));
+        sameBuilder = XMLUtil.withDocumentBuilder(b -> b);
+        assertThat(sameBuilder).isSameAs(builder);
+
+        // output properties are reset
+        Transformer transformer = XMLUtil.withTransformer(t -> {
+            t.setOutputProperty(OutputKeys.INDENT, "yes");
+            return t;
+        });
+        Transformer sameTransformer = XMLUtil.withTransformer(t -> t);
+        assertThat(sameTransformer).isSameAs(transformer);
+        String indent = XMLUtil.withTransformer(
+                t -> t.getOutputProperty(OutputKeys.INDENT));
+        assertThat(indent).isEqualTo("no");
+    }
+
+    @Test
+    void testClearThreadCaches() throws SAXException {
+        DocumentBuilder builder = XMLUtil.withDocumentBuilder(b -> b);
+        Transformer transformer = XMLUtil.withTransformer(t -> t);
+        var expr = XPathUtil.getXPathExpression("a/b");
+        assertThat(XPathUtil.getXPathExpression("a/b")).isSameAs(expr);
+
+        XMLUtil.clearThreadCaches();
+        DocumentBuilder newBuilder = XMLUtil.withDocumentBuilder(b -> b);
+        assertThat(newBuilder).isNotSameAs(builder);
+        Transformer newTransformer = XMLUtil.withTransformer(t -> t);
+        assertThat(newTransformer).isNotSameAs(transformer);
+        assertThat(XPathUtil.getXPathExpression("a/b")).isNotSameAs(expr);
+        // still usable
+        assertThat(XML.of("<a><b>text</b></a>").create().getString("b"))
+                .isEqualTo("text");
+        assertThat(new XMLStreamBinder().onXML("/a/b", b -> {})
+                .bind("<a><b>text</b></a>")).isOne();
+    }
+
     @Test
     void testToName() {
         assertThat(XMLUtil.toLocalName(new QName("nx:blah"))).isEqualTo("blah");
@@ -17,6 +17,8 @@ package com.norconex.commons.lang.xml;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.junit.jupiter.api.Test;
 
 class XPathUtilTest {
@@ -40,4 +42,19 @@ class XPathUtilTest {
             XPathUtil.newXPathExpression("$#$%^&");
         });
     }
+
+    @Test
+    void testGetXPathExpression() throws Exception {
+        var expr = XPathUtil.getXPathExpression("a/b/@c");
+        // cached for this thread only
+        assertThat(XPathUtil.getXPathExpression("a/b/@c")).isSameAs(expr);
+        assertThat(XPathUtil.newXPathExpression("a/b/@c")).isNotSameAs(expr);
+        assertThat(CompletableFuture.supplyAsync(
+                () -> XPathUtil.getXPathExpression("a/b/@c")).get())
+            .isNotNull()
+            .isNotSameAs(expr);
+        assertThatExceptionOfType(XMLException.class).isThrownBy(() -> {
+            XPathUtil.getXPathExpression("$#$%^&");
+        });
+    }
 }